@@ -14,13 +14,25 @@
 
 package com.google.sps.data;
 
-/** Represents a UFO sighting at a specific lat lng point. */
-public class UfoSighting {
-  private double lat;
-  private double lng;
+import java.util.List;
+import java.util.Map;
 
-  public UfoSighting(double lat, double lng) {
-    this.lat = lat;
-    this.lng = lng;
+/**
+ * Everything the page needs when it loads: the current user, the newest comments, the
+ * nicknames of their authors by user id and their markers by id.
+ */
+public final class Bootstrap {
+
+  private final User user;
+  private final List<Comment> comments;
+  private final Map<String, String> authors;
+  private final Map<Long, Marker> markers;
+
+  public Bootstrap(User user, List<Comment> comments, Map<String, String> authors,
+      Map<Long, Marker> markers) {
+    this.user = user;
+    this.comments = comments;
+    this.authors = authors;
+    this.markers = markers;
   }
 }
@@ -14,6 +14,13 @@
 
 package com.google.sps.data;
 
+import com.google.appengine.api.datastore.Entity;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import java.io.IOException;
+
 /** A comment left by a user*/
 public final class Comment {
 
@@ -30,4 +37,94 @@ public final class Comment {
     this.userId = userId;
     this.timestamp = timestamp;
   }
-}
\ No newline at end of file
+
+  public long getId() {
+    return id;
+  }
+
+  public long getMarkerId() {
+    return markerId;
+  }
+
+  public String getUserId() {
+    return userId;
+  }
+
+  public String getCommentText() {
+    return commentText;
+  }
+
+  public long getTimestamp() {
+    return timestamp;
+  }
+
+  /** Builds a comment from its Datastore entity. */
+  public static Comment fromEntity(Entity entity) {
+    long id = entity.getKey().getId();
+    String commentText = (String) entity.getProperty("comment-text");
+    String userId = (String) entity.getProperty("user-id");
+    long markerId = (long) entity.getProperty("marker-id");
+    long timestamp = (long) entity.getProperty("timestamp");
+    return new Comment(id, commentText, markerId, userId, timestamp);
+  }
+
+  /** Converts comments to and from JSON without reflection. */
+  static final class JsonAdapter extends TypeAdapter<Comment> {
+    @Override
+    public void write(JsonWriter out, Comment comment) throws IOException {
+      if (comment == null) {
+        out.nullValue();
+        return;
+      }
+      out.beginObject();
+      out.name("id").value(comment.id);
+      out.name("commentText").value(comment.commentText);
+      out.name("markerId").value(comment.markerId);
+      out.name("userId").value(comment.userId);
+      out.name("timestamp").value(comment.timestamp);
+      out.endObject();
+    }
+
+    @Override
+    public Comment read(JsonReader in) throws IOException {
+      if (in.peek() == JsonToken.NULL) {
+        in.nextNull();
+        return null;
+      }
+      long id = 0;
+      String commentText = null;
+      long markerId = 0;
+      String userId = null;
+      long timestamp = 0;
+      in.beginObject();
+      while (in.hasNext()) {
+        String name = in.nextName();
+        if (in.peek() == JsonToken.NULL) {
+          in.nextNull();
+          continue;
+        }
+        switch (name) {
+          case "id":
+            id = in.nextLong();
+            break;
+          case "commentText":
+            commentText = in.nextString();
+            break;
+          case "markerId":
+            markerId = in.nextLong();
+            break;
+          case "userId":
+            userId = in.nextString();
+            break;
+          case "timestamp":
+            timestamp = in.nextLong();
+            break;
+          default:
+            in.skipValue();
+        }
+      }
+      in.endObject();
+      return new Comment(id, commentText, markerId, userId, timestamp);
+    }
+  }
+}
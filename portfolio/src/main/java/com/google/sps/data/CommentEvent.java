@@ -0,0 +1,58 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+/**
+ * A change to a comment pushed to the open pages.
+ *
+ * <p>Note: The type is sent as the event name and the other fields are sent as JSON.
+ */
+public final class CommentEvent {
+
+  public static final String NEW = "new";
+  public static final String EDIT = "edit";
+  public static final String DELETE = "delete";
+
+  private final transient String type;
+  private final long id;
+  private final long markerId;
+
+  /** The comment after the change, or null when it was deleted. */
+  private final Comment comment;
+
+  private CommentEvent(String type, long id, long markerId, Comment comment) {
+    this.type = type;
+    this.id = id;
+    this.markerId = markerId;
+    this.comment = comment;
+  }
+
+  public static CommentEvent created(Comment comment) {
+    return new CommentEvent(NEW, comment.getId(), comment.getMarkerId(), comment);
+  }
+
+  /** @param prevMarkerId the marker the comment was tagged to before the edit */
+  public static CommentEvent edited(Comment comment, long prevMarkerId) {
+    return new CommentEvent(EDIT, comment.getId(), prevMarkerId, comment);
+  }
+
+  public static CommentEvent deleted(long id, long markerId) {
+    return new CommentEvent(DELETE, id, markerId, null);
+  }
+
+  public String getType() {
+    return type;
+  }
+}
@@ -0,0 +1,156 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory fan-out of comment changes to every open comment stream.
+ *
+ * <p>Each subscriber has its own bounded buffer, so a slow client can only fall behind,
+ * never hold up the servlet publishing a change or the other subscribers. When a
+ * subscriber falls more than BUFFER_SIZE events behind, its oldest events are dropped
+ * and it is told to reload the comments instead.
+ */
+public final class CommentEvents {
+
+  /** Number of undelivered events kept for each subscriber. */
+  private static final int BUFFER_SIZE = 64;
+
+  private static final CommentEvents instance = new CommentEvents();
+
+  private final Set<Subscription> subscriptions = new CopyOnWriteArraySet<>();
+
+  private final AtomicLong nextEventId = new AtomicLong(1);
+
+  private CommentEvents() {}
+
+  public static CommentEvents getInstance() {
+    return instance;
+  }
+
+  /**
+   * Queues the event for every subscriber and wakes them up. A subscriber whose listener
+   * fails is dropped, so it can neither fail the publishing request nor keep the event from
+   * the subscribers after it.
+   */
+  public void publish(CommentEvent event) {
+    long eventId = nextEventId.getAndIncrement();
+    for (Subscription subscription : subscriptions) {
+      try {
+        subscription.offer(eventId, event);
+      } catch (RuntimeException e) {
+        subscription.cancel();
+      }
+    }
+  }
+
+  /**
+   * @param listener called, possibly from the publishing thread, whenever events become
+   *     available; it should hand the work of draining them to another thread
+   */
+  public Subscription subscribe(Runnable listener) {
+    Subscription subscription = new Subscription(listener);
+    subscriptions.add(subscription);
+    return subscription;
+  }
+
+  /** A subscriber's buffer of events that were published but not yet delivered. */
+  public final class Subscription {
+    private final Runnable listener;
+
+    // Ring buffer of undelivered events. Guarded by this.
+    private final long[] eventIds = new long[BUFFER_SIZE];
+    private final CommentEvent[] events = new CommentEvent[BUFFER_SIZE];
+    private int head = 0;
+    private int size = 0;
+    private boolean overflowed = false;
+
+    /** Set once cancelled, since publish may still hold the subscription in a snapshot. */
+    private volatile boolean cancelled = false;
+
+    private Subscription(Runnable listener) {
+      this.listener = listener;
+    }
+
+    private void offer(long eventId, CommentEvent event) {
+      if (cancelled) {
+        return;
+      }
+      synchronized (this) {
+        if (size == BUFFER_SIZE) {
+          // drop the oldest event
+          head = (head + 1) % BUFFER_SIZE;
+          size--;
+          overflowed = true;
+        }
+        int tail = (head + size) % BUFFER_SIZE;
+        eventIds[tail] = eventId;
+        events[tail] = event;
+        size++;
+      }
+      listener.run();
+    }
+
+    /** @return the buffered events in publishing order, removing them from the buffer */
+    public synchronized List<Delivery> drain() {
+      List<Delivery> deliveries = new ArrayList<>(size);
+      for (int i = 0; i < size; i++) {
+        int index = (head + i) % BUFFER_SIZE;
+        deliveries.add(new Delivery(eventIds[index], events[index]));
+        events[index] = null;
+      }
+      head = 0;
+      size = 0;
+      return deliveries;
+    }
+
+    /** @return whether events were dropped since the last call, clearing the flag */
+    public synchronized boolean checkOverflow() {
+      boolean dropped = overflowed;
+      overflowed = false;
+      return dropped;
+    }
+
+    /** Stops receiving events. */
+    public void cancel() {
+      cancelled = true;
+      subscriptions.remove(this);
+    }
+  }
+
+  /** An event together with its position in the stream. */
+  public static final class Delivery {
+    private final long eventId;
+    private final CommentEvent event;
+
+    private Delivery(long eventId, CommentEvent event) {
+      this.eventId = eventId;
+      this.event = event;
+    }
+
+    public long getEventId() {
+      return eventId;
+    }
+
+    public CommentEvent getEvent() {
+      return event;
+    }
+  }
+}
@@ -0,0 +1,269 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Query;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * In-memory inverted index over the text of every comment.
+ *
+ * <p>Comment text is split into lowercase words, and each word maps to the comments
+ * containing it and how often. Every word of a search has to match the start of a word in
+ * a comment; results are ranked by tf-idf, with exact word matches counting double, and
+ * then by recency. The index is loaded from Datastore on first use and kept up to date by
+ * the servlets that write comments.
+ *
+ * <p>Comments written by other instances only reach Datastore, so the index is loaded again
+ * once it is MAX_AGE_MILLIS old. One request reloads it while the others keep searching the
+ * old index, and changes made here during the reload are applied to the new index too.
+ */
+public final class CommentSearchIndex {
+
+  /** How long the index is used before it is loaded from Datastore again. */
+  private static final long MAX_AGE_MILLIS = 60_000;
+
+  private static volatile CommentSearchIndex instance;
+
+  private static final AtomicBoolean reloading = new AtomicBoolean();
+
+  private final long loadedAt = System.currentTimeMillis();
+
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+  /** Indexed comments by id. Guarded by lock. */
+  private final Map<Long, Comment> comments = new HashMap<>();
+
+  /** For each word, the ids of the comments containing it and the number of times. */
+  private final TreeMap<String, Map<Long, Integer>> postings = new TreeMap<>();
+
+  /** Changes to apply to the index being loaded to replace this one, if any. Guarded by lock. */
+  private List<Consumer<CommentSearchIndex>> changesDuringReload;
+
+  /** The index that replaced this one, which gets any later changes. Guarded by lock. */
+  private CommentSearchIndex successor;
+
+  private CommentSearchIndex() {}
+
+  /**
+   * @return the shared index, loading every comment from Datastore on first use and again
+   *         once it is MAX_AGE_MILLIS old
+   */
+  public static CommentSearchIndex getInstance() {
+    CommentSearchIndex index = instance;
+    if (index == null) {
+      synchronized (CommentSearchIndex.class) {
+        if (instance == null) {
+          instance = load();
+        }
+        return instance;
+      }
+    }
+    if (System.currentTimeMillis() - index.loadedAt >= MAX_AGE_MILLIS
+        && reloading.compareAndSet(false, true)) {
+      try {
+        index = reload(index);
+      } finally {
+        reloading.set(false);
+      }
+    }
+    return index;
+  }
+
+  private static CommentSearchIndex load() {
+    CommentSearchIndex index = new CommentSearchIndex();
+    DatastoreService datastore = SharedServices.getDatastore();
+    for (Entity entity : datastore.prepare(new Query("Comment")).asIterable()) {
+      index.put(Comment.fromEntity(entity));
+    }
+    return index;
+  }
+
+  /**
+   * Loads a new index to replace the old one, applying the changes made to the old one
+   * meanwhile, which the query may have missed.
+   */
+  private static CommentSearchIndex reload(CommentSearchIndex old) {
+    old.lock.writeLock().lock();
+    try {
+      old.changesDuringReload = new ArrayList<>();
+    } finally {
+      old.lock.writeLock().unlock();
+    }
+    CommentSearchIndex fresh = null;
+    try {
+      fresh = load();
+    } finally {
+      old.lock.writeLock().lock();
+      try {
+        if (fresh != null) {
+          for (Consumer<CommentSearchIndex> change : old.changesDuringReload) {
+            change.accept(fresh);
+          }
+          old.successor = fresh;
+          instance = fresh;
+        }
+        old.changesDuringReload = null;
+      } finally {
+        old.lock.writeLock().unlock();
+      }
+    }
+    return fresh;
+  }
+
+  /** Adds a comment to the index, replacing any earlier version of it. */
+  public void put(Comment comment) {
+    lock.writeLock().lock();
+    try {
+      if (successor != null) {
+        successor.put(comment);
+        return;
+      }
+      if (changesDuringReload != null) {
+        changesDuringReload.add(index -> index.put(comment));
+      }
+      removeLocked(comment.getId());
+      comments.put(comment.getId(), comment);
+      for (Map.Entry<String, Integer> word : countWords(comment.getCommentText()).entrySet()) {
+        postings.computeIfAbsent(word.getKey(), key -> new HashMap<>())
+            .put(comment.getId(), word.getValue());
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /** Removes a comment from the index, doing nothing if it was never indexed. */
+  public void remove(long commentId) {
+    lock.writeLock().lock();
+    try {
+      if (successor != null) {
+        successor.remove(commentId);
+        return;
+      }
+      if (changesDuringReload != null) {
+        changesDuringReload.add(index -> index.remove(commentId));
+      }
+      removeLocked(commentId);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  private void removeLocked(long commentId) {
+    Comment comment = comments.remove(commentId);
+    if (comment == null) {
+      return;
+    }
+    for (String word : countWords(comment.getCommentText()).keySet()) {
+      Map<Long, Integer> commentIds = postings.get(word);
+      commentIds.remove(commentId);
+      if (commentIds.isEmpty()) {
+        postings.remove(word);
+      }
+    }
+  }
+
+  /**
+   * @return at most maxResults comments containing every word of the query, best
+   *         matches first
+   */
+  public List<Comment> search(String query, int maxResults) {
+    List<String> queryWords = new ArrayList<>(countWords(query).keySet());
+    if (queryWords.isEmpty()) {
+      return new ArrayList<>();
+    }
+
+    lock.readLock().lock();
+    try {
+      Map<Long, Double> scores = null;
+      for (String queryWord : queryWords) {
+        Map<Long, Double> wordScores = scoreWord(queryWord);
+        if (scores == null) {
+          scores = wordScores;
+        } else {
+          // keep only the comments matching every word so far
+          scores.keySet().retainAll(wordScores.keySet());
+          for (Map.Entry<Long, Double> score : scores.entrySet()) {
+            score.setValue(score.getValue() + wordScores.get(score.getKey()));
+          }
+        }
+        if (scores.isEmpty()) {
+          break;
+        }
+      }
+
+      final Map<Long, Double> finalScores = scores;
+      List<Comment> results = new ArrayList<>();
+      for (long commentId : finalScores.keySet()) {
+        results.add(comments.get(commentId));
+      }
+      results.sort((a, b) -> {
+        int byScore = Double.compare(finalScores.get(b.getId()), finalScores.get(a.getId()));
+        return byScore != 0 ? byScore : Long.compare(b.getTimestamp(), a.getTimestamp());
+      });
+      return results.size() > maxResults
+          ? new ArrayList<>(results.subList(0, maxResults)) : results;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /** @return the score of every comment with a word starting with queryWord */
+  private Map<Long, Double> scoreWord(String queryWord) {
+    Map<Long, Double> scores = new HashMap<>();
+    // every word starting with queryWord sorts between it and queryWord + the largest char
+    for (Map.Entry<String, Map<Long, Integer>> word
+        : postings.subMap(queryWord, true, queryWord + '\uffff', false).entrySet()) {
+      Map<Long, Integer> commentIds = word.getValue();
+      double idf = Math.log(1 + (double) comments.size() / commentIds.size());
+      double weight = word.getKey().equals(queryWord) ? 2 : 1;
+      for (Map.Entry<Long, Integer> posting : commentIds.entrySet()) {
+        scores.merge(posting.getKey(), weight * posting.getValue() * idf, Double::sum);
+      }
+    }
+    return scores;
+  }
+
+  /** @return the lowercase words of the text and how many times each appears */
+  private static Map<String, Integer> countWords(String text) {
+    Map<String, Integer> counts = new HashMap<>();
+    if (text == null) {
+      return counts;
+    }
+    int start = -1;
+    for (int i = 0; i <= text.length(); i++) {
+      boolean inWord = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+      if (inWord && start == -1) {
+        start = i;
+      } else if (!inWord && start != -1) {
+        counts.merge(text.substring(start, i).toLowerCase(Locale.ROOT), 1, Integer::sum);
+        start = -1;
+      }
+    }
+    return counts;
+  }
+}
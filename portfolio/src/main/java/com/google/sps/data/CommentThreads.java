@@ -0,0 +1,233 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.EntityNotFoundException;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.datastore.KeyRange;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.Query.SortDirection;
+import com.google.appengine.api.datastore.Transaction;
+import com.google.appengine.api.datastore.TransactionOptions;
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+/**
+ * Comments are stored as children of the Marker they are tagged to, so each marker
+ * and its comments form one entity group that can be read with a single, strongly
+ * consistent ancestor query.
+ *
+ * <p>Ids Datastore assigns to child entities are only unique under one parent, so comment
+ * ids are allocated from the kind-wide range instead, which keeps a bare comment id
+ * unique across markers. A comment moved to another marker keeps its id.
+ */
+public final class CommentThreads {
+
+  /** Number of comment ids reserved with each allocation. */
+  private static final int ID_BLOCK_SIZE = 100;
+
+  /**
+   * Number of times a transaction on a thread is tried before giving up. Writes to comments
+   * on the same marker contend on its entity group, so attempts are spaced out by a random
+   * backoff.
+   */
+  private static final int MAX_ATTEMPTS = 5;
+  private static final long BACKOFF_MILLIS = 20;
+
+  /**
+   * Most comments deleted per transaction when deleting a thread. Besides the marker's
+   * entity group, each may touch a shard of its author's count, and the batch touches a
+   * shard of the total and of the marker's count, within the limit of 25 entity groups.
+   */
+  private static final int THREAD_DELETE_BATCH_SIZE = 20;
+
+  /** The next id to hand out from the reserved block, and the end of the block. */
+  private static long nextId = 0;
+  private static long idLimit = 0;
+
+  private CommentThreads() {}
+
+  /** @return the key of the marker with the given id */
+  public static Key markerKey(long markerId) {
+    return KeyFactory.createKey("Marker", markerId);
+  }
+
+  /** @return the key of a comment stored under the given marker */
+  public static Key commentKey(long markerId, long commentId) {
+    return KeyFactory.createKey(markerKey(markerId), "Comment", commentId);
+  }
+
+  /** @return a new, unsaved comment entity under the given marker, with a unique id */
+  public static Entity newCommentEntity(long markerId) {
+    return new Entity(commentKey(markerId, allocateCommentId()));
+  }
+
+  /** @return an unsaved copy of the comment entity under the given marker, with the same id */
+  public static Entity movedCommentEntity(long markerId, Entity commentEntity) {
+    Entity movedEntity = new Entity(commentKey(markerId, commentEntity.getKey().getId()));
+    movedEntity.setPropertiesFrom(commentEntity);
+    return movedEntity;
+  }
+
+  /** @return an id no other comment has, reserving a block of them when none are left */
+  private static synchronized long allocateCommentId() {
+    if (nextId == idLimit) {
+      KeyRange range = SharedServices.getDatastore().allocateIds("Comment", ID_BLOCK_SIZE);
+      nextId = range.getStart().getId();
+      idLimit = range.getEnd().getId() + 1;
+    }
+    return nextId++;
+  }
+
+  /**
+   * Deletes the comment and decrements the comment counts it is part of in one
+   * transaction, so a comment deleted by two requests at once is only counted once.
+   * @return whether the comment existed
+   */
+  public static boolean deleteComment(DatastoreService datastore, Key commentKey) {
+    return retryOnConflict(() -> tryDeleteComment(datastore, commentKey));
+  }
+
+  /**
+   * Deletes the marker and every comment tagged to it, decrementing the comment counts
+   * in the same transactions. Each transaction reads the remaining comments with an
+   * ancestor query, so a comment stored while the thread is being deleted makes the
+   * transaction retry rather than being left behind. The marker is deleted by the
+   * transaction that deletes the last comments.
+   * @return the ids of the deleted comments
+   */
+  public static List<Long> deleteThread(DatastoreService datastore, long markerId) {
+    List<Long> deletedIds = new ArrayList<>();
+    boolean markerDeleted = false;
+    while (!markerDeleted) {
+      markerDeleted = retryOnConflict(() -> tryDeleteThreadBatch(datastore, markerId, deletedIds));
+    }
+    return deletedIds;
+  }
+
+  /** Runs the transaction, retrying with a random backoff when it hits contention. */
+  static <T> T retryOnConflict(Supplier<T> transaction) {
+    for (int attempt = 1; ; attempt++) {
+      try {
+        return transaction.get();
+      } catch (ConcurrentModificationException e) {
+        if (attempt == MAX_ATTEMPTS) {
+          throw e;
+        }
+        try {
+          Thread.sleep(ThreadLocalRandom.current().nextLong(BACKOFF_MILLIS << attempt));
+        } catch (InterruptedException interrupted) {
+          Thread.currentThread().interrupt();
+          throw e;
+        }
+      }
+    }
+  }
+
+  private static boolean tryDeleteComment(DatastoreService datastore, Key commentKey) {
+    Transaction txn = datastore.beginTransaction(TransactionOptions.Builder.withXG(true));
+    try {
+      Entity commentEntity;
+      try {
+        commentEntity = datastore.get(txn, commentKey);
+      } catch (EntityNotFoundException e) {
+        return false;
+      }
+      String userId = (String) commentEntity.getProperty("user-id");
+      datastore.delete(txn, commentKey);
+      UserTimeline.commentCounter(userId).increment(datastore, txn, -1);
+      SiteStats.totalCommentsCounter().increment(datastore, txn, -1);
+      SiteStats.markerCommentsCounter(commentKey.getParent().getId())
+          .increment(datastore, txn, -1);
+      txn.commit();
+      return true;
+    } finally {
+      if (txn.isActive()) {
+        txn.rollback();
+      }
+    }
+  }
+
+  /**
+   * Deletes up to THREAD_DELETE_BATCH_SIZE of the marker's comments, and the marker too
+   * if no comments are left, adding the ids deleted to deletedIds once committed.
+   * @return whether the marker was deleted
+   */
+  private static boolean tryDeleteThreadBatch(DatastoreService datastore, long markerId,
+      List<Long> deletedIds) {
+    Key markerKey = markerKey(markerId);
+    Transaction txn = datastore.beginTransaction(TransactionOptions.Builder.withXG(true));
+    try {
+      List<Entity> commentEntities = datastore
+          .prepare(txn, new Query("Comment").setAncestor(markerKey))
+          .asList(FetchOptions.Builder.withLimit(THREAD_DELETE_BATCH_SIZE + 1));
+      boolean lastBatch = commentEntities.size() <= THREAD_DELETE_BATCH_SIZE;
+      if (!lastBatch) {
+        commentEntities = commentEntities.subList(0, THREAD_DELETE_BATCH_SIZE);
+      }
+
+      List<Key> keys = new ArrayList<>();
+      Map<String, Long> byUser = new HashMap<>();
+      for (Entity commentEntity : commentEntities) {
+        keys.add(commentEntity.getKey());
+        byUser.merge((String) commentEntity.getProperty("user-id"), 1L, Long::sum);
+      }
+      if (lastBatch) {
+        keys.add(markerKey);
+      }
+      datastore.delete(txn, keys);
+      if (!commentEntities.isEmpty()) {
+        for (Map.Entry<String, Long> user : byUser.entrySet()) {
+          UserTimeline.commentCounter(user.getKey()).increment(datastore, txn, -user.getValue());
+        }
+        SiteStats.totalCommentsCounter().increment(datastore, txn, -commentEntities.size());
+        SiteStats.markerCommentsCounter(markerId)
+            .increment(datastore, txn, -commentEntities.size());
+      }
+      txn.commit();
+
+      for (Entity commentEntity : commentEntities) {
+        deletedIds.add(commentEntity.getKey().getId());
+      }
+      return lastBatch;
+    } finally {
+      if (txn.isActive()) {
+        txn.rollback();
+      }
+    }
+  }
+
+  /** @return all the comments tagged to the marker, oldest first */
+  public static List<Comment> getThread(DatastoreService datastore, long markerId) {
+    Query query = new Query("Comment")
+        .setAncestor(markerKey(markerId))
+        .addSort("timestamp", SortDirection.ASCENDING);
+
+    List<Comment> comments = new ArrayList<>();
+    for (Entity entity : datastore.prepare(query).asIterable()) {
+      comments.add(Comment.fromEntity(entity));
+    }
+    return comments;
+  }
+}
@@ -0,0 +1,197 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import com.google.appengine.api.datastore.DatastoreFailureException;
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.Transaction;
+import com.google.appengine.api.datastore.TransactionOptions;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Coalesces comment writes arriving at the same time into cross-group transactions that
+ * store the comments together with the comment counts they add to.
+ *
+ * <p>The first request to find no write pending waits for WINDOW_MILLIS, collecting the
+ * comments of any requests that arrive meanwhile, and then commits them in transactions
+ * of up to MAX_BATCH_SIZE comments. Each transaction adds to one shard of the total count
+ * however many comments it holds, so coalescing also takes load off that counter. A request
+ * that finds no other write in progress commits its comment right away instead. Every
+ * request still blocks until its own comment is committed, so callers see the same
+ * guarantees as storing it in a transaction of its own.
+ */
+public final class CommentWriter {
+
+  /** How long the first writer waits for other writes to join its batch. */
+  private static final long WINDOW_MILLIS = 10;
+
+  /**
+   * Most comments per transaction. Each touches its marker's entity group and a shard of
+   * its author's and its marker's counts, besides the shared total, which keeps a full
+   * batch within the 25 entity groups a transaction can touch.
+   */
+  private static final int MAX_BATCH_SIZE = 8;
+
+  private static final CommentWriter instance = new CommentWriter();
+
+  private final DatastoreService datastore = SharedServices.getDatastore();
+
+  private final Object lock = new Object();
+
+  /** Writes waiting for the current window to close. Guarded by lock. */
+  private List<PendingPut> pending = new ArrayList<>();
+
+  /** Number of writes pending or being stored. Guarded by lock. */
+  private int active = 0;
+
+  private CommentWriter() {}
+
+  public static CommentWriter getInstance() {
+    return instance;
+  }
+
+  /**
+   * Stores the comment entity, which must have a complete key, and adds it to the comment
+   * counts as part of the next batch, blocking until the batch is committed.
+   * @return the key of the stored entity
+   */
+  public Key put(Entity entity) {
+    PendingPut put = new PendingPut(entity);
+    boolean firstInWindow;
+    boolean alone;
+    synchronized (lock) {
+      pending.add(put);
+      active++;
+      firstInWindow = pending.size() == 1;
+      alone = active == 1;
+    }
+
+    try {
+      if (firstInWindow) {
+        // Only wait for company when other writes suggest some may arrive.
+        if (!alone) {
+          try {
+            Thread.sleep(WINDOW_MILLIS);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        }
+        flush();
+      }
+      return put.await();
+    } finally {
+      synchronized (lock) {
+        active--;
+      }
+    }
+  }
+
+  /**
+   * Writes every pending entity, in chunks no larger than MAX_BATCH_SIZE. Any failure,
+   * even one thrown before a put is started, is passed on to every write in the batch
+   * that is not yet complete, so no request is left waiting.
+   */
+  private void flush() {
+    List<PendingPut> batch;
+    synchronized (lock) {
+      batch = pending;
+      pending = new ArrayList<>();
+    }
+
+    try {
+      writeBatch(batch);
+    } catch (RuntimeException | Error e) {
+      for (PendingPut put : batch) {
+        put.result.completeExceptionally(e);
+      }
+    }
+  }
+
+  private void writeBatch(List<PendingPut> batch) {
+    for (int start = 0; start < batch.size(); start += MAX_BATCH_SIZE) {
+      List<PendingPut> puts = batch.subList(start, Math.min(start + MAX_BATCH_SIZE, batch.size()));
+      try {
+        // batches on the same markers contend, like deletes do
+        CommentThreads.retryOnConflict(() -> commit(puts));
+        for (PendingPut put : puts) {
+          put.result.complete(put.entity.getKey());
+        }
+      } catch (RuntimeException e) {
+        for (PendingPut put : puts) {
+          put.result.completeExceptionally(e);
+        }
+      }
+    }
+  }
+
+  /**
+   * Stores the comments and adds them to their counts in one transaction.
+   * @return the number of comments stored
+   */
+  private int commit(List<PendingPut> puts) {
+    List<Entity> entities = new ArrayList<>(puts.size());
+    Map<String, Long> byUser = new HashMap<>();
+    Map<Long, Long> byMarker = new HashMap<>();
+    for (PendingPut put : puts) {
+      entities.add(put.entity);
+      byUser.merge((String) put.entity.getProperty("user-id"), 1L, Long::sum);
+      byMarker.merge(put.entity.getParent().getId(), 1L, Long::sum);
+    }
+
+    Transaction txn = datastore.beginTransaction(TransactionOptions.Builder.withXG(true));
+    try {
+      datastore.put(txn, entities);
+      for (Map.Entry<String, Long> user : byUser.entrySet()) {
+        UserTimeline.commentCounter(user.getKey()).increment(datastore, txn, user.getValue());
+      }
+      for (Map.Entry<Long, Long> marker : byMarker.entrySet()) {
+        SiteStats.markerCommentsCounter(marker.getKey())
+            .increment(datastore, txn, marker.getValue());
+      }
+      SiteStats.totalCommentsCounter().increment(datastore, txn, entities.size());
+      txn.commit();
+      return entities.size();
+    } finally {
+      if (txn.isActive()) {
+        txn.rollback();
+      }
+    }
+  }
+
+  /** An entity waiting to be stored and the key it is eventually stored under. */
+  private static final class PendingPut {
+    private final Entity entity;
+    private final CompletableFuture<Key> result = new CompletableFuture<>();
+
+    private PendingPut(Entity entity) {
+      this.entity = entity;
+    }
+
+    private Key await() {
+      try {
+        return result.get();
+      } catch (InterruptedException | ExecutionException e) {
+        throw new DatastoreFailureException("Could not store comment", e);
+      }
+    }
+  }
+}
@@ -0,0 +1,197 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.Query.SortDirection;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Cached, pre-serialized pages of the newest comments.
+ *
+ * <p>The newest MAX_COMMENTS comments are read from Datastore once and each requested
+ * page size is serialized to JSON and gzip only the first time it is asked for. The
+ * comment servlets call invalidate() after every write, and the next reader rebuilds
+ * the snapshot while any concurrent readers wait for that one rebuild. Snapshots also
+ * expire after MAX_AGE_MILLIS so writes handled by other instances show up.
+ */
+public final class CommentsSnapshot {
+
+  /** Largest page size served from the snapshot. */
+  public static final int MAX_COMMENTS = 20;
+
+  /** How long a snapshot is served before it is rebuilt even without local writes. */
+  private static final long MAX_AGE_MILLIS = 5000;
+
+  private static final CommentsSnapshot instance = new CommentsSnapshot();
+
+  /** Incremented by every write, so snapshots built before it are known to be stale. */
+  private final AtomicLong generation = new AtomicLong();
+
+  private final Object rebuildLock = new Object();
+
+  private volatile Snapshot current;
+
+  private CommentsSnapshot() {}
+
+  public static CommentsSnapshot getInstance() {
+    return instance;
+  }
+
+  /** Marks the current snapshot as stale after a comment was written or deleted. */
+  public void invalidate() {
+    generation.incrementAndGet();
+  }
+
+  /**
+   * @return the newest maxComments comments, which must be between 1 and MAX_COMMENTS
+   */
+  public Page getPage(int maxComments) {
+    if (maxComments < 1 || maxComments > MAX_COMMENTS) {
+      throw new IllegalArgumentException(
+          "Page size must be between 1 and " + MAX_COMMENTS + ": " + maxComments);
+    }
+    Snapshot snapshot = current;
+    if (!isFresh(snapshot)) {
+      snapshot = rebuild();
+    }
+    return snapshot.getPage(maxComments);
+  }
+
+  private boolean isFresh(Snapshot snapshot) {
+    return snapshot != null
+        && snapshot.generation == generation.get()
+        && System.currentTimeMillis() - snapshot.builtAt < MAX_AGE_MILLIS;
+  }
+
+  private Snapshot rebuild() {
+    synchronized (rebuildLock) {
+      // Another reader may have rebuilt the snapshot while we waited for the lock.
+      Snapshot snapshot = current;
+      if (isFresh(snapshot)) {
+        return snapshot;
+      }
+
+      // Read the generation before querying, so a write during the query makes the
+      // new snapshot stale right away instead of hiding that write.
+      long snapshotGeneration = generation.get();
+      DatastoreService datastore = SharedServices.getDatastore();
+      Query query = new Query("Comment").addSort("timestamp", SortDirection.DESCENDING);
+      List<Comment> comments = new ArrayList<>();
+      for (Entity entity : datastore.prepare(query)
+          .asIterable(FetchOptions.Builder.withLimit(MAX_COMMENTS))) {
+        comments.add(Comment.fromEntity(entity));
+      }
+
+      snapshot = new Snapshot(snapshotGeneration, System.currentTimeMillis(), comments);
+      current = snapshot;
+      return snapshot;
+    }
+  }
+
+  /** The newest comments as of one point in time, and the pages serialized from them. */
+  private static final class Snapshot {
+    private final long generation;
+    private final long builtAt;
+    private final List<Comment> comments;
+    private final Map<Integer, Page> pages = new ConcurrentHashMap<>();
+
+    private Snapshot(long generation, long builtAt, List<Comment> comments) {
+      this.generation = generation;
+      this.builtAt = builtAt;
+      this.comments = comments;
+    }
+
+    private Page getPage(int maxComments) {
+      int size = Math.min(maxComments, comments.size());
+      return pages.computeIfAbsent(
+          size, key -> new Page(new ArrayList<>(comments.subList(0, size))));
+    }
+  }
+
+  /** One page of comments serialized as JSON, both raw and gzip-compressed. */
+  public static final class Page {
+    private final List<Comment> comments;
+    private final byte[] json;
+    private final byte[] gzipJson;
+    private final String etag;
+
+    private Page(List<Comment> comments) {
+      this.comments = comments;
+      json = SharedServices.getGson().toJson(comments).getBytes(StandardCharsets.UTF_8);
+      gzipJson = gzip(json);
+      etag = hash(json);
+    }
+
+    public List<Comment> getComments() {
+      return comments;
+    }
+
+    public byte[] getJson() {
+      return json;
+    }
+
+    public byte[] getGzipJson() {
+      return gzipJson;
+    }
+
+    /** @return a strong ETag for the uncompressed JSON */
+    public String getEtag() {
+      return "\"" + etag + "\"";
+    }
+
+    /** @return a strong ETag for the gzip-compressed JSON */
+    public String getGzipEtag() {
+      return "\"" + etag + "-gzip\"";
+    }
+
+    private static byte[] gzip(byte[] bytes) {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      try (GZIPOutputStream gzipOut = new GZIPOutputStream(out)) {
+        gzipOut.write(bytes);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      return out.toByteArray();
+    }
+
+    private static String hash(byte[] bytes) {
+      try {
+        byte[] digest = MessageDigest.getInstance("SHA-1").digest(bytes);
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest) {
+          hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+      } catch (NoSuchAlgorithmException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+  }
+}
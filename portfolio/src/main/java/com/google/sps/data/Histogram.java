@@ -0,0 +1,71 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import java.io.PrintWriter;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of durations with fixed buckets, updated without locks.
+ */
+public final class Histogram {
+
+  /** Upper bounds of the buckets in seconds, as Prometheus clients use by default. */
+  static final double[] BUCKET_SECONDS =
+      {0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10};
+
+  private static final long[] BUCKET_NANOS = new long[BUCKET_SECONDS.length];
+
+  static {
+    for (int i = 0; i < BUCKET_SECONDS.length; i++) {
+      BUCKET_NANOS[i] = (long) (BUCKET_SECONDS[i] * 1e9);
+    }
+  }
+
+  /** Counts of the durations in each bucket, plus one for those above every bound. */
+  private final LongAdder[] counts = new LongAdder[BUCKET_SECONDS.length + 1];
+  private final LongAdder sumNanos = new LongAdder();
+
+  public Histogram() {
+    for (int i = 0; i < counts.length; i++) {
+      counts[i] = new LongAdder();
+    }
+  }
+
+  public void record(long nanos) {
+    int bucket = 0;
+    while (bucket < BUCKET_NANOS.length && nanos > BUCKET_NANOS[bucket]) {
+      bucket++;
+    }
+    counts[bucket].increment();
+    sumNanos.add(nanos);
+  }
+
+  /**
+   * Writes the histogram as Prometheus text samples.
+   *
+   * @param labels the labels of the series, e.g. {@code endpoint="/markers"}
+   */
+  void write(PrintWriter out, String name, String labels) {
+    long cumulative = 0;
+    for (int i = 0; i < counts.length; i++) {
+      cumulative += counts[i].sum();
+      String bound = i < BUCKET_SECONDS.length ? Double.toString(BUCKET_SECONDS[i]) : "+Inf";
+      out.print(name + "_bucket{" + labels + ",le=\"" + bound + "\"} " + cumulative + "\n");
+    }
+    out.print(name + "_sum{" + labels + "} " + sumNanos.sum() / 1e9 + "\n");
+    out.print(name + "_count{" + labels + "} " + cumulative + "\n");
+  }
+}
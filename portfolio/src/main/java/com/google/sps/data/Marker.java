@@ -14,6 +14,12 @@
 
 package com.google.sps.data;
 
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import java.io.IOException;
+
 /** A permanent marker on the map associated with a comment. */
 public final class Marker {
 
@@ -28,4 +34,54 @@ public final class Marker {
     this.lat = lat;
     this.lng = lng;
   }
-}
\ No newline at end of file
+
+  /** Converts markers to and from JSON without reflection. */
+  static final class JsonAdapter extends TypeAdapter<Marker> {
+    @Override
+    public void write(JsonWriter out, Marker marker) throws IOException {
+      if (marker == null) {
+        out.nullValue();
+        return;
+      }
+      out.beginObject();
+      out.name("id").value(marker.id);
+      out.name("visible").value(marker.visible);
+      out.name("lat").value(marker.lat);
+      out.name("lng").value(marker.lng);
+      out.endObject();
+    }
+
+    @Override
+    public Marker read(JsonReader in) throws IOException {
+      if (in.peek() == JsonToken.NULL) {
+        in.nextNull();
+        return null;
+      }
+      long id = 0;
+      boolean visible = false;
+      double lat = 0;
+      double lng = 0;
+      in.beginObject();
+      while (in.hasNext()) {
+        switch (in.nextName()) {
+          case "id":
+            id = in.nextLong();
+            break;
+          case "visible":
+            visible = in.nextBoolean();
+            break;
+          case "lat":
+            lat = in.nextDouble();
+            break;
+          case "lng":
+            lng = in.nextDouble();
+            break;
+          default:
+            in.skipValue();
+        }
+      }
+      in.endObject();
+      return new Marker(id, visible, lat, lng);
+    }
+  }
+}
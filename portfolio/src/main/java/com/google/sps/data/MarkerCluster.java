@@ -0,0 +1,95 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import java.io.IOException;
+
+/**
+ * A group of nearby markers drawn as a single point at low zoom levels.
+ * When the cluster holds exactly one marker, markerId is that marker's id.
+ */
+public final class MarkerCluster {
+
+  private final double lat;
+  private final double lng;
+  private final int count;
+  private final Long markerId;
+
+  public MarkerCluster(double lat, double lng, int count, Long markerId) {
+    this.lat = lat;
+    this.lng = lng;
+    this.count = count;
+    this.markerId = markerId;
+  }
+
+  /** Converts clusters to and from JSON without reflection. */
+  static final class JsonAdapter extends TypeAdapter<MarkerCluster> {
+    @Override
+    public void write(JsonWriter out, MarkerCluster cluster) throws IOException {
+      if (cluster == null) {
+        out.nullValue();
+        return;
+      }
+      out.beginObject();
+      out.name("lat").value(cluster.lat);
+      out.name("lng").value(cluster.lng);
+      out.name("count").value(cluster.count);
+      out.name("markerId").value(cluster.markerId);
+      out.endObject();
+    }
+
+    @Override
+    public MarkerCluster read(JsonReader in) throws IOException {
+      if (in.peek() == JsonToken.NULL) {
+        in.nextNull();
+        return null;
+      }
+      double lat = 0;
+      double lng = 0;
+      int count = 0;
+      Long markerId = null;
+      in.beginObject();
+      while (in.hasNext()) {
+        String name = in.nextName();
+        if (in.peek() == JsonToken.NULL) {
+          in.nextNull();
+          continue;
+        }
+        switch (name) {
+          case "lat":
+            lat = in.nextDouble();
+            break;
+          case "lng":
+            lng = in.nextDouble();
+            break;
+          case "count":
+            count = in.nextInt();
+            break;
+          case "markerId":
+            markerId = in.nextLong();
+            break;
+          default:
+            in.skipValue();
+        }
+      }
+      in.endObject();
+      return new MarkerCluster(lat, lng, count, markerId);
+    }
+  }
+}
@@ -0,0 +1,265 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Query;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * In-memory grid clustering of the visible markers, precomputed for every zoom level.
+ *
+ * <p>Each map tile (standard 256px Web Mercator tiles) is split into a grid of
+ * CELLS_PER_TILE x CELLS_PER_TILE cells, and all the markers falling into the same
+ * cell are merged into one cluster placed at their average position. The clusters are
+ * updated incrementally whenever a marker is added or removed, so serving a tile never
+ * touches Datastore.
+ *
+ * <p>Markers added or removed by other instances only reach Datastore, so the clusters are
+ * loaded again once they are MAX_AGE_MILLIS old. One request reloads them while the others
+ * keep using the old clusters, and changes made here during the reload are applied to the
+ * new clusters too.
+ */
+public final class MarkerClusters {
+
+  /** Highest zoom level clusters are precomputed for. */
+  public static final int MAX_ZOOM = 18;
+
+  /** Number of grid cells along each side of a tile (32px cells on a 256px tile). */
+  private static final int CELLS_PER_TILE = 8;
+
+  /** How long the clusters are used before they are loaded from Datastore again. */
+  private static final long MAX_AGE_MILLIS = 60_000;
+
+  private static volatile MarkerClusters instance;
+
+  private static final AtomicBoolean reloading = new AtomicBoolean();
+
+  private final long loadedAt = System.currentTimeMillis();
+
+  /** Changes to apply to the clusters being loaded to replace these, if any. */
+  private List<Consumer<MarkerClusters>> changesDuringReload;
+
+  /** The clusters that replaced these, which get any later changes. */
+  private MarkerClusters successor;
+
+  /** Position of every clustered marker, needed to find its cells again on removal. */
+  private final Map<Long, double[]> positions = new HashMap<>();
+
+  /** For each zoom level, the occupied cells of each tile keyed by packed coordinates. */
+  private final List<Map<Long, Map<Long, Cell>>> tilesByZoom = new ArrayList<>();
+
+  private MarkerClusters() {
+    for (int zoom = 0; zoom <= MAX_ZOOM; zoom++) {
+      tilesByZoom.add(new HashMap<>());
+    }
+  }
+
+  /**
+   * @return the shared clusters, loading every visible marker from Datastore on first use
+   *         and again once they are MAX_AGE_MILLIS old
+   */
+  public static MarkerClusters getInstance() {
+    MarkerClusters clusters = instance;
+    if (clusters == null) {
+      synchronized (MarkerClusters.class) {
+        if (instance == null) {
+          instance = load();
+        }
+        return instance;
+      }
+    }
+    if (System.currentTimeMillis() - clusters.loadedAt >= MAX_AGE_MILLIS
+        && reloading.compareAndSet(false, true)) {
+      try {
+        clusters = reload(clusters);
+      } finally {
+        reloading.set(false);
+      }
+    }
+    return clusters;
+  }
+
+  private static MarkerClusters load() {
+    MarkerClusters clusters = new MarkerClusters();
+    DatastoreService datastore = SharedServices.getDatastore();
+    for (Entity entity : datastore.prepare(new Query("Marker")).asIterable()) {
+      if ((boolean) entity.getProperty("visible")) {
+        clusters.add(entity.getKey().getId(),
+            (double) entity.getProperty("lat"), (double) entity.getProperty("lng"));
+      }
+    }
+    return clusters;
+  }
+
+  /**
+   * Loads new clusters to replace the old ones, applying the changes made to the old ones
+   * meanwhile, which the query may have missed.
+   */
+  private static MarkerClusters reload(MarkerClusters old) {
+    synchronized (old) {
+      old.changesDuringReload = new ArrayList<>();
+    }
+    MarkerClusters fresh = null;
+    try {
+      fresh = load();
+    } finally {
+      synchronized (old) {
+        if (fresh != null) {
+          for (Consumer<MarkerClusters> change : old.changesDuringReload) {
+            change.accept(fresh);
+          }
+          old.successor = fresh;
+          instance = fresh;
+        }
+        old.changesDuringReload = null;
+      }
+    }
+    return fresh;
+  }
+
+  /** Adds a marker to the cell it falls into at every zoom level. */
+  public synchronized void add(long markerId, double lat, double lng) {
+    if (successor != null) {
+      successor.add(markerId, lat, lng);
+      return;
+    }
+    if (changesDuringReload != null) {
+      changesDuringReload.add(clusters -> clusters.add(markerId, lat, lng));
+    }
+    if (positions.containsKey(markerId)) {
+      return;
+    }
+    positions.put(markerId, new double[] {lat, lng});
+
+    for (int zoom = 0; zoom <= MAX_ZOOM; zoom++) {
+      long cellX = cellX(lng, zoom);
+      long cellY = cellY(lat, zoom);
+      Map<Long, Cell> tile = tilesByZoom.get(zoom).computeIfAbsent(
+          pack(cellX / CELLS_PER_TILE, cellY / CELLS_PER_TILE), key -> new HashMap<>());
+      tile.computeIfAbsent(pack(cellX, cellY), key -> new Cell()).add(markerId, lat, lng);
+    }
+  }
+
+  /** Removes a marker from all its cells, doing nothing if it was never clustered. */
+  public synchronized void remove(long markerId) {
+    if (successor != null) {
+      successor.remove(markerId);
+      return;
+    }
+    if (changesDuringReload != null) {
+      changesDuringReload.add(clusters -> clusters.remove(markerId));
+    }
+    double[] position = positions.remove(markerId);
+    if (position == null) {
+      return;
+    }
+    double lat = position[0];
+    double lng = position[1];
+
+    for (int zoom = 0; zoom <= MAX_ZOOM; zoom++) {
+      long cellX = cellX(lng, zoom);
+      long cellY = cellY(lat, zoom);
+      long tileKey = pack(cellX / CELLS_PER_TILE, cellY / CELLS_PER_TILE);
+      long cellKey = pack(cellX, cellY);
+
+      Map<Long, Cell> tile = tilesByZoom.get(zoom).get(tileKey);
+      Cell cell = tile.get(cellKey);
+      cell.remove(markerId, lat, lng);
+      if (cell.count == 0) {
+        tile.remove(cellKey);
+        if (tile.isEmpty()) {
+          tilesByZoom.get(zoom).remove(tileKey);
+        }
+      }
+    }
+  }
+
+  /**
+   * @return the clusters inside tile (x, y) at the given zoom level, or an empty list
+   *         if the tile has no markers
+   */
+  public synchronized List<MarkerCluster> getTile(int zoom, long x, long y) {
+    if (zoom < 0 || zoom > MAX_ZOOM) {
+      throw new IllegalArgumentException("Zoom level must be between 0 and " + MAX_ZOOM);
+    }
+    Map<Long, Cell> tile = tilesByZoom.get(zoom).get(pack(x, y));
+    if (tile == null) {
+      return new ArrayList<>();
+    }
+
+    List<MarkerCluster> clusters = new ArrayList<>(tile.size());
+    for (Cell cell : tile.values()) {
+      clusters.add(cell.toCluster());
+    }
+    return clusters;
+  }
+
+  private static long cellX(double lng, int zoom) {
+    double x = (lng + 180) / 360;
+    return clamp((long) Math.floor(x * (CELLS_PER_TILE << zoom)), zoom);
+  }
+
+  private static long cellY(double lat, int zoom) {
+    double sinLat = Math.sin(Math.toRadians(lat));
+    double y = 0.5 - Math.log((1 + sinLat) / (1 - sinLat)) / (4 * Math.PI);
+    return clamp((long) Math.floor(y * (CELLS_PER_TILE << zoom)), zoom);
+  }
+
+  /** Keeps points on the edges of the Mercator projection inside the world. */
+  private static long clamp(long cell, int zoom) {
+    long cells = (long) CELLS_PER_TILE << zoom;
+    return Math.max(0, Math.min(cells - 1, cell));
+  }
+
+  private static long pack(long x, long y) {
+    return (x << 32) | y;
+  }
+
+  /** Running totals of the markers in one grid cell. */
+  private static final class Cell {
+    private int count;
+    private double latSum;
+    private double lngSum;
+
+    // Sum of the ids in this cell; when only one marker is left it is that marker's id.
+    private long idSum;
+
+    private void add(long markerId, double lat, double lng) {
+      count++;
+      latSum += lat;
+      lngSum += lng;
+      idSum += markerId;
+    }
+
+    private void remove(long markerId, double lat, double lng) {
+      count--;
+      latSum -= lat;
+      lngSum -= lng;
+      idSum -= markerId;
+    }
+
+    private MarkerCluster toCluster() {
+      Long markerId = count == 1 ? idSum : null;
+      return new MarkerCluster(latSum / count, lngSum / count, count, markerId);
+    }
+  }
+}
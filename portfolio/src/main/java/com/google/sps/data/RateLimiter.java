@@ -0,0 +1,125 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+
+/**
+ * Token buckets keyed by client, e.g. by user id or IP address.
+ *
+ * <p>Each bucket holds up to burst tokens and gains tokensPerMinute of them a minute, and
+ * each request takes one. Buckets are updated with compare-and-set rather than locks.
+ * A bucket that has been idle long enough to refill completely is indistinguishable from
+ * a new one, so such buckets are dropped by a sweep that runs at most every
+ * SWEEP_INTERVAL_NANOS, on whichever request comes first.
+ */
+public final class RateLimiter {
+
+  private static final long SWEEP_INTERVAL_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+  private final int burst;
+  private final double tokensPerNano;
+  private final LongSupplier clock;
+  private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+  private final AtomicLong nextSweep;
+
+  public RateLimiter(int burst, double tokensPerMinute) {
+    this(burst, tokensPerMinute, System::nanoTime);
+  }
+
+  /** @param clock the current time in nanoseconds, replaceable in tests */
+  RateLimiter(int burst, double tokensPerMinute, LongSupplier clock) {
+    this.burst = burst;
+    this.tokensPerNano = tokensPerMinute / TimeUnit.MINUTES.toNanos(1);
+    this.clock = clock;
+    this.nextSweep = new AtomicLong(clock.getAsLong() + SWEEP_INTERVAL_NANOS);
+  }
+
+  /**
+   * Takes a token from the client's bucket if it has one.
+   *
+   * @return 0 if a token was taken, otherwise how many nanoseconds until one is available
+   */
+  public long tryAcquire(String client) {
+    long now = clock.getAsLong();
+    sweepIfDue(now);
+    Bucket bucket = buckets.computeIfAbsent(client, key -> new Bucket(burst, now));
+    return bucket.tryTake(now);
+  }
+
+  /** @return the number of clients with a bucket */
+  int size() {
+    return buckets.size();
+  }
+
+  private void sweepIfDue(long now) {
+    long due = nextSweep.get();
+    if (now - due < 0 || !nextSweep.compareAndSet(due, now + SWEEP_INTERVAL_NANOS)) {
+      return;
+    }
+    for (Map.Entry<String, Bucket> entry : buckets.entrySet()) {
+      if (entry.getValue().isFull(now)) {
+        // only removes the bucket if no request replaced it in the meantime
+        buckets.remove(entry.getKey(), entry.getValue());
+      }
+    }
+  }
+
+  /** The tokens of one client. */
+  private final class Bucket {
+    private final AtomicReference<State> state;
+
+    private Bucket(double tokens, long now) {
+      state = new AtomicReference<>(new State(tokens, now));
+    }
+
+    private long tryTake(long now) {
+      while (true) {
+        State current = state.get();
+        double tokens = current.tokensAt(now);
+        if (tokens < 1) {
+          return (long) Math.ceil((1 - tokens) / tokensPerNano);
+        }
+        if (state.compareAndSet(current, new State(tokens - 1, now))) {
+          return 0;
+        }
+      }
+    }
+
+    private boolean isFull(long now) {
+      return state.get().tokensAt(now) >= burst;
+    }
+  }
+
+  /** The tokens a bucket held at one point in time. */
+  private final class State {
+    private final double tokens;
+    private final long updatedAt;
+
+    private State(double tokens, long updatedAt) {
+      this.tokens = tokens;
+      this.updatedAt = updatedAt;
+    }
+
+    private double tokensAt(long now) {
+      return Math.min(burst, tokens + Math.max(0, now - updatedAt) * tokensPerNano);
+    }
+  }
+}
@@ -0,0 +1,101 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import java.io.PrintWriter;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Request durations per endpoint, and for sampled requests the time spent in each
+ * tracing phase. Exported in the Prometheus text format by MetricsServlet.
+ *
+ * <p>Note: Each instance keeps its own metrics; they are not shared across instances.
+ */
+public final class RequestMetrics {
+
+  /** Most endpoints tracked separately; the rest are grouped under OTHER_ENDPOINT. */
+  private static final int MAX_ENDPOINTS = 64;
+
+  private static final String OTHER_ENDPOINT = "other";
+
+  private static final RequestMetrics instance = new RequestMetrics();
+
+  /** Sorted by endpoint, so the exported series keep a stable order. */
+  private final Map<String, EndpointMetrics> endpoints = new ConcurrentSkipListMap<>();
+
+  private RequestMetrics() {}
+
+  public static RequestMetrics getInstance() {
+    return instance;
+  }
+
+  /**
+   * @param phaseNanos the time spent in each phase, or null if the request was not sampled
+   */
+  public void record(String endpoint, long durationNanos, long[] phaseNanos) {
+    EndpointMetrics metrics = endpoints.get(endpoint);
+    if (metrics == null) {
+      // bounds the number of series when clients request many different paths
+      if (endpoints.size() >= MAX_ENDPOINTS) {
+        endpoint = OTHER_ENDPOINT;
+      }
+      metrics = endpoints.computeIfAbsent(endpoint, key -> new EndpointMetrics());
+    }
+
+    metrics.requests.record(durationNanos);
+    if (phaseNanos != null) {
+      for (int i = 0; i < phaseNanos.length; i++) {
+        metrics.phases[i].record(phaseNanos[i]);
+      }
+    }
+  }
+
+  /** Writes every metric in the Prometheus text exposition format. */
+  public void write(PrintWriter out) {
+    out.print("# HELP http_request_duration_seconds Time to handle a request.\n");
+    out.print("# TYPE http_request_duration_seconds histogram\n");
+    for (Map.Entry<String, EndpointMetrics> entry : endpoints.entrySet()) {
+      entry.getValue().requests.write(out, "http_request_duration_seconds",
+          "endpoint=\"" + escape(entry.getKey()) + "\"");
+    }
+
+    out.print("# HELP http_request_phase_seconds Time a sampled request spent in a phase.\n");
+    out.print("# TYPE http_request_phase_seconds histogram\n");
+    for (Map.Entry<String, EndpointMetrics> entry : endpoints.entrySet()) {
+      for (Tracing.Phase phase : Tracing.Phase.values()) {
+        entry.getValue().phases[phase.ordinal()].write(out, "http_request_phase_seconds",
+            "endpoint=\"" + escape(entry.getKey()) + "\",phase=\"" + phase.getLabel() + "\"");
+      }
+    }
+  }
+
+  /** @return the value escaped for use in a Prometheus label */
+  private static String escape(String value) {
+    return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+  }
+
+  /** The histograms of one endpoint. */
+  private static final class EndpointMetrics {
+    private final Histogram requests = new Histogram();
+    private final Histogram[] phases = new Histogram[Tracing.Phase.values().length];
+
+    private EndpointMetrics() {
+      for (int i = 0; i < phases.length; i++) {
+        phases[i] = new Histogram();
+      }
+    }
+  }
+}
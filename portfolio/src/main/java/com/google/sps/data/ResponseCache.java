@@ -0,0 +1,113 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Serialized GET responses kept in memory, so repeat requests for the same resource skip
+ * the servlet and Datastore. Entries expire after the time their servlet allows and are
+ * dropped by the servlets that change the resource; the least recently used entries are
+ * evicted once there are MAX_ENTRIES.
+ *
+ * <p>Note: Each instance has its own cache, so a change made on another instance shows
+ * up here only when the entry expires.
+ */
+public final class ResponseCache {
+
+  private static final int MAX_ENTRIES = 10000;
+
+  private static final ResponseCache instance = new ResponseCache();
+
+  /** Guarded by itself. */
+  private final Map<String, Entry> entries =
+      new LinkedHashMap<String, Entry>(16, 0.75f, /*accessOrder=*/ true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+          return size() > MAX_ENTRIES;
+        }
+      };
+
+  private ResponseCache() {}
+
+  public static ResponseCache getInstance() {
+    return instance;
+  }
+
+  /** @return the cache key of the resource with the given id served at path */
+  public static String key(String path, String id) {
+    return path + "?id=" + id;
+  }
+
+  /** @return the cached response, or null if there is none or it has expired */
+  public Entry get(String key) {
+    synchronized (entries) {
+      Entry entry = entries.get(key);
+      if (entry != null && System.currentTimeMillis() >= entry.expiresAt) {
+        entries.remove(key);
+        return null;
+      }
+      return entry;
+    }
+  }
+
+  public void put(String key, Entry entry) {
+    synchronized (entries) {
+      entries.put(key, entry);
+    }
+  }
+
+  /** Drops the cached response, e.g. after the resource was changed or deleted. */
+  public void invalidate(String key) {
+    synchronized (entries) {
+      entries.remove(key);
+    }
+  }
+
+  /** One cached response. */
+  public static final class Entry {
+    private final byte[] body;
+    private final String contentType;
+    private final String etag;
+    private final String cacheControl;
+    private final long expiresAt;
+
+    public Entry(byte[] body, String contentType, String etag, String cacheControl,
+        long expiresAt) {
+      this.body = body;
+      this.contentType = contentType;
+      this.etag = etag;
+      this.cacheControl = cacheControl;
+      this.expiresAt = expiresAt;
+    }
+
+    public byte[] getBody() {
+      return body;
+    }
+
+    public String getContentType() {
+      return contentType;
+    }
+
+    public String getEtag() {
+      return etag;
+    }
+
+    public String getCacheControl() {
+      return cacheControl;
+    }
+  }
+}
@@ -0,0 +1,200 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.EntityNotFoundException;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.datastore.Transaction;
+import com.google.appengine.api.datastore.TransactionOptions;
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A counter stored in Datastore as NUM_SHARDS separate entities.
+ *
+ * <p>A single entity can only be updated about once a second, so each update goes to a
+ * random shard instead and reading the counter sums all the shards. Sums are cached for
+ * CACHE_MILLIS, and updates committed by this instance are applied to the cached sum.
+ * There is a counter per user and per marker, so only the MAX_CACHED_COUNTS most
+ * recently used sums are kept.
+ */
+public final class ShardedCounter {
+
+  /** Number of entities each counter is split into. */
+  private static final int NUM_SHARDS = 20;
+
+  /** Number of times an update is tried before giving up on contended shards. */
+  private static final int MAX_ATTEMPTS = 3;
+
+  /** How long a summed count is served before the shards are read again. */
+  private static final long CACHE_MILLIS = 5000;
+
+  private static final int MAX_CACHED_COUNTS = 10000;
+
+  /** The last sum read for each counter name. Guarded by itself. */
+  private static final Map<String, CachedCount> cachedCounts =
+      new LinkedHashMap<String, CachedCount>(16, 0.75f, /*accessOrder=*/ true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedCount> eldest) {
+          return size() > MAX_CACHED_COUNTS;
+        }
+      };
+
+  private final String name;
+
+  public ShardedCounter(String name) {
+    this.name = name;
+  }
+
+  /** Adds delta to the counter in a transaction of its own. */
+  public void increment(long delta) {
+    increment(delta, this);
+  }
+
+  /** Adds delta to all of the counters in a single transaction. */
+  public static void increment(long delta, ShardedCounter... counters) {
+    DatastoreService datastore = SharedServices.getDatastore();
+    for (int attempt = 1; ; attempt++) {
+      Transaction txn = datastore.beginTransaction(TransactionOptions.Builder.withXG(true));
+      try {
+        for (ShardedCounter counter : counters) {
+          counter.updateShard(datastore, txn, delta);
+        }
+        txn.commit();
+        synchronized (cachedCounts) {
+          for (ShardedCounter counter : counters) {
+            cachedCounts.computeIfPresent(counter.name, (key, cached) -> cached.plus(delta));
+          }
+        }
+        return;
+      } catch (ConcurrentModificationException e) {
+        // the next attempt most likely picks a different shard
+        if (attempt == MAX_ATTEMPTS) {
+          throw e;
+        }
+      } finally {
+        if (txn.isActive()) {
+          txn.rollback();
+        }
+      }
+    }
+  }
+
+  /**
+   * Adds delta to the counter as part of the caller's transaction, which must allow
+   * cross-group writes if it touches any other entity group. Since the transaction may
+   * still fail, the cached sum is dropped rather than updated.
+   */
+  public void increment(DatastoreService datastore, Transaction txn, long delta) {
+    updateShard(datastore, txn, delta);
+    synchronized (cachedCounts) {
+      cachedCounts.remove(name);
+    }
+  }
+
+  /**
+   * Replaces the counter's value with count in a single transaction, for correcting counts
+   * that were never kept. Updates committed meanwhile by other requests are overwritten.
+   */
+  public void set(long count) {
+    DatastoreService datastore = SharedServices.getDatastore();
+    // every shard is its own entity group, and NUM_SHARDS is within the cross-group limit
+    Transaction txn = datastore.beginTransaction(TransactionOptions.Builder.withXG(true));
+    try {
+      List<Entity> shards = new ArrayList<>(NUM_SHARDS);
+      for (int i = 0; i < NUM_SHARDS; i++) {
+        Entity shard = new Entity(shardKey(i));
+        shard.setUnindexedProperty("count", i == 0 ? count : 0L);
+        shards.add(shard);
+      }
+      datastore.put(txn, shards);
+      txn.commit();
+    } finally {
+      if (txn.isActive()) {
+        txn.rollback();
+      }
+    }
+    synchronized (cachedCounts) {
+      cachedCounts.remove(name);
+    }
+  }
+
+  private void updateShard(DatastoreService datastore, Transaction txn, long delta) {
+    Key shardKey = shardKey(ThreadLocalRandom.current().nextInt(NUM_SHARDS));
+    Entity shard;
+    try {
+      shard = datastore.get(txn, shardKey);
+    } catch (EntityNotFoundException e) {
+      shard = new Entity(shardKey);
+      shard.setUnindexedProperty("count", 0L);
+    }
+    shard.setUnindexedProperty("count", (long) shard.getProperty("count") + delta);
+    datastore.put(txn, shard);
+  }
+
+  /** @return the sum of all the shards, read with a single batch get if not cached */
+  public long getCount() {
+    synchronized (cachedCounts) {
+      CachedCount cached = cachedCounts.get(name);
+      if (cached != null) {
+        if (System.currentTimeMillis() - cached.readAt < CACHE_MILLIS) {
+          return cached.count;
+        }
+        cachedCounts.remove(name);
+      }
+    }
+
+    List<Key> shardKeys = new ArrayList<>(NUM_SHARDS);
+    for (int i = 0; i < NUM_SHARDS; i++) {
+      shardKeys.add(shardKey(i));
+    }
+
+    DatastoreService datastore = SharedServices.getDatastore();
+    long count = 0;
+    for (Entity shard : datastore.get(shardKeys).values()) {
+      count += (long) shard.getProperty("count");
+    }
+    synchronized (cachedCounts) {
+      cachedCounts.put(name, new CachedCount(count, System.currentTimeMillis()));
+    }
+    return count;
+  }
+
+  private Key shardKey(int shard) {
+    return KeyFactory.createKey("CounterShard", name + "#" + shard);
+  }
+
+  /** A summed count and when the shards were read. */
+  private static final class CachedCount {
+    private final long count;
+    private final long readAt;
+
+    private CachedCount(long count, long readAt) {
+      this.count = count;
+      this.readAt = readAt;
+    }
+
+    private CachedCount plus(long delta) {
+      return new CachedCount(count + delta, readAt);
+    }
+  }
+}
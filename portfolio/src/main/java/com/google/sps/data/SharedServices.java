@@ -0,0 +1,108 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import com.google.appengine.api.datastore.AsyncDatastoreService;
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.PreparedQuery;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+
+/**
+ * The Gson and Datastore clients shared by every servlet. They are all thread-safe, so
+ * they are built once instead of on every request.
+ *
+ * <p>Gson uses the hand-written adapters of the data classes rather than building
+ * reflective ones. Serialization and calls to the Datastore client and its prepared
+ * queries are timed by Tracing; results fetched lazily while iterating a query are not.
+ */
+public final class SharedServices {
+
+  private static final Gson gson = new GsonBuilder()
+      .registerTypeAdapter(Comment.class, new Comment.JsonAdapter())
+      .registerTypeAdapter(Marker.class, new Marker.JsonAdapter())
+      .registerTypeAdapter(MarkerCluster.class, new MarkerCluster.JsonAdapter())
+      .registerTypeAdapter(User.class, new User.JsonAdapter())
+      // later registrations take precedence, so this wraps the adapters above
+      .registerTypeAdapterFactory(new TracingAdapterFactory())
+      .create();
+
+  private static final DatastoreService datastore =
+      traced(DatastoreService.class, DatastoreServiceFactory.getDatastoreService());
+
+  private static final AsyncDatastoreService asyncDatastore =
+      DatastoreServiceFactory.getAsyncDatastoreService();
+
+  private SharedServices() {}
+
+  public static Gson getGson() {
+    return gson;
+  }
+
+  public static DatastoreService getDatastore() {
+    return datastore;
+  }
+
+  public static AsyncDatastoreService getAsyncDatastore() {
+    return asyncDatastore;
+  }
+
+  /** @return a proxy of target that times every call as a Datastore span */
+  @SuppressWarnings("unchecked")
+  private static <T> T traced(Class<T> type, T target) {
+    return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type},
+        (proxy, method, args) -> {
+          try (Tracing.Span span = Tracing.span(Tracing.Phase.DATASTORE)) {
+            Object result = method.invoke(target, args);
+            if (result instanceof PreparedQuery) {
+              return traced(PreparedQuery.class, (PreparedQuery) result);
+            }
+            return result;
+          } catch (InvocationTargetException e) {
+            throw e.getCause();
+          }
+        });
+  }
+
+  /** Times writing each value as a serialization span. */
+  private static final class TracingAdapterFactory implements TypeAdapterFactory {
+    @Override
+    public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+      TypeAdapter<T> delegate = gson.getDelegateAdapter(this, type);
+      return new TypeAdapter<T>() {
+        @Override
+        public void write(JsonWriter out, T value) throws IOException {
+          try (Tracing.Span span = Tracing.span(Tracing.Phase.SERIALIZE)) {
+            delegate.write(out, value);
+          }
+        }
+
+        @Override
+        public T read(JsonReader in) throws IOException {
+          return delegate.read(in);
+        }
+      };
+    }
+  }
+}
@@ -0,0 +1,49 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+
+/** Live comment and marker counts for the dashboards. */
+public final class SiteStats {
+
+  private final long totalComments;
+  private final long markersCreatedToday;
+
+  /** Comments tagged to the requested marker, or null if no marker was requested. */
+  private final Long markerComments;
+
+  public SiteStats(long totalComments, long markersCreatedToday, Long markerComments) {
+    this.totalComments = totalComments;
+    this.markersCreatedToday = markersCreatedToday;
+    this.markerComments = markerComments;
+  }
+
+  /** @return the counter of all the comments on the site */
+  public static ShardedCounter totalCommentsCounter() {
+    return new ShardedCounter("comments");
+  }
+
+  /** @return the counter of the comments tagged to the given marker */
+  public static ShardedCounter markerCommentsCounter(long markerId) {
+    return new ShardedCounter("marker-comments:" + markerId);
+  }
+
+  /** @return the counter of the markers created on the current UTC day */
+  public static ShardedCounter markersCreatedTodayCounter() {
+    return new ShardedCounter("markers-created:" + LocalDate.now(ZoneOffset.UTC));
+  }
+}
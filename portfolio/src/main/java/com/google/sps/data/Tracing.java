@@ -0,0 +1,105 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+/**
+ * Times the phases of the request being handled on the current thread.
+ *
+ * <p>TracingFilter starts a trace for the requests it samples, and the shared Datastore
+ * client, Gson and response writer open a span around their work. Outside a sampled
+ * request a span costs one thread-local lookup. Spans of a phase that is already open
+ * on the thread do nothing, so nested work is not counted twice.
+ */
+public final class Tracing {
+
+  /** The parts of a request that are timed separately. */
+  public enum Phase {
+    DATASTORE("datastore"),
+    SERIALIZE("serialize"),
+    WRITE("write");
+
+    private final String label;
+
+    Phase(String label) {
+      this.label = label;
+    }
+
+    /** @return the name of the phase in the exported metrics */
+    public String getLabel() {
+      return label;
+    }
+  }
+
+  private static final ThreadLocal<Trace> currentTrace = new ThreadLocal<>();
+
+  /** The span returned when there is nothing to time. */
+  private static final Span NOOP_SPAN = new Span(null, null, 0);
+
+  private Tracing() {}
+
+  /** Starts timing the phases of the current request. */
+  public static void beginTrace() {
+    currentTrace.set(new Trace());
+  }
+
+  /**
+   * Stops timing the current request.
+   *
+   * @return the nanoseconds spent in each phase, indexed by ordinal, or null if no trace
+   *     was started
+   */
+  public static long[] endTrace() {
+    Trace trace = currentTrace.get();
+    currentTrace.remove();
+    return trace == null ? null : trace.phaseNanos;
+  }
+
+  /** Starts timing a phase; close the span when the phase is over. */
+  public static Span span(Phase phase) {
+    Trace trace = currentTrace.get();
+    if (trace == null || trace.open[phase.ordinal()]) {
+      return NOOP_SPAN;
+    }
+    trace.open[phase.ordinal()] = true;
+    return new Span(trace, phase, System.nanoTime());
+  }
+
+  /** The time spent in each phase so far by one request. */
+  private static final class Trace {
+    private final long[] phaseNanos = new long[Phase.values().length];
+    private final boolean[] open = new boolean[Phase.values().length];
+  }
+
+  /** One timed phase of a request. */
+  public static final class Span implements AutoCloseable {
+    private final Trace trace;
+    private final Phase phase;
+    private final long start;
+
+    private Span(Trace trace, Phase phase, long start) {
+      this.trace = trace;
+      this.phase = phase;
+      this.start = start;
+    }
+
+    @Override
+    public void close() {
+      if (trace != null) {
+        trace.phaseNanos[phase.ordinal()] += System.nanoTime() - start;
+        trace.open[phase.ordinal()] = false;
+      }
+    }
+  }
+}
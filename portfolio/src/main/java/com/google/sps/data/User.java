@@ -14,6 +14,12 @@
 
 package com.google.sps.data;
 
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import java.io.IOException;
+
 /** Website user details */
 public final class User {
 
@@ -36,4 +42,64 @@ public final class User {
     this.nickname = nickname;
     this.loggedIn = loggedIn;
   }
-}
\ No newline at end of file
+
+  /** Converts users to and from JSON without reflection. */
+  static final class JsonAdapter extends TypeAdapter<User> {
+    @Override
+    public void write(JsonWriter out, User user) throws IOException {
+      if (user == null) {
+        out.nullValue();
+        return;
+      }
+      out.beginObject();
+      out.name("email").value(user.email);
+      out.name("id").value(user.id);
+      out.name("nickname").value(user.nickname);
+      out.name("loggedIn").value(user.loggedIn);
+      out.name("toggleLoginURL").value(user.toggleLoginURL);
+      out.endObject();
+    }
+
+    @Override
+    public User read(JsonReader in) throws IOException {
+      if (in.peek() == JsonToken.NULL) {
+        in.nextNull();
+        return null;
+      }
+      String email = null;
+      String id = null;
+      String nickname = null;
+      boolean loggedIn = false;
+      String toggleLoginURL = null;
+      in.beginObject();
+      while (in.hasNext()) {
+        String name = in.nextName();
+        if (in.peek() == JsonToken.NULL) {
+          in.nextNull();
+          continue;
+        }
+        switch (name) {
+          case "email":
+            email = in.nextString();
+            break;
+          case "id":
+            id = in.nextString();
+            break;
+          case "nickname":
+            nickname = in.nextString();
+            break;
+          case "loggedIn":
+            loggedIn = in.nextBoolean();
+            break;
+          case "toggleLoginURL":
+            toggleLoginURL = in.nextString();
+            break;
+          default:
+            in.skipValue();
+        }
+      }
+      in.endObject();
+      return new User(email, id, nickname, loggedIn, toggleLoginURL);
+    }
+  }
+}
@@ -0,0 +1,38 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import java.util.List;
+
+/** One page of a user's comments, newest first, and the total number they left. */
+public final class UserTimeline {
+
+  private final List<Comment> comments;
+  private final long commentCount;
+
+  /** Cursor to pass back to get the next page, or null if this is the last page. */
+  private final String cursor;
+
+  public UserTimeline(List<Comment> comments, long commentCount, String cursor) {
+    this.comments = comments;
+    this.commentCount = commentCount;
+    this.cursor = cursor;
+  }
+
+  /** @return the counter of the comments left by the given user */
+  public static ShardedCounter commentCounter(String userId) {
+    return new ShardedCounter("user-comments:" + userId);
+  }
+}
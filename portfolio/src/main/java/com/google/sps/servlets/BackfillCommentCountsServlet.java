@@ -0,0 +1,83 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.users.UserService;
+import com.google.appengine.api.users.UserServiceFactory;
+import com.google.sps.data.SharedServices;
+import com.google.sps.data.SiteStats;
+import com.google.sps.data.UserTimeline;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Admin-only servlet that recounts the stored comments and sets the total, per-marker
+ * and per-user comment counters to match. Run it once after /migrate-comments, while
+ * comments are not being posted or deleted, since changes made during the recount are
+ * overwritten. Running it again is harmless.
+ */
+@WebServlet("/backfill-comment-counts")
+public class BackfillCommentCountsServlet extends HttpServlet {
+
+  private final DatastoreService datastore = SharedServices.getDatastore();
+
+  @Override
+  public void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    UserService userService = UserServiceFactory.getUserService();
+    if (!userService.isUserLoggedIn() || !userService.isUserAdmin()) {
+      response.sendError(HttpServletResponse.SC_FORBIDDEN);
+      return;
+    }
+
+    // Markers without comments are reset to zero too.
+    Map<Long, Long> byMarker = new HashMap<>();
+    for (Entity marker : datastore.prepare(new Query("Marker").setKeysOnly()).asIterable()) {
+      byMarker.put(marker.getKey().getId(), 0L);
+    }
+
+    Map<String, Long> byUser = new HashMap<>();
+    long total = 0;
+    for (Entity comment : datastore.prepare(new Query("Comment")).asIterable()) {
+      if (comment.getParent() == null) {
+        // not migrated yet, so not shown under any marker
+        continue;
+      }
+      byMarker.merge(comment.getParent().getId(), 1L, Long::sum);
+      Object userId = comment.getProperty("user-id");
+      byUser.merge(userId == null ? "" : (String) userId, 1L, Long::sum);
+      total++;
+    }
+
+    for (Map.Entry<Long, Long> marker : byMarker.entrySet()) {
+      SiteStats.markerCommentsCounter(marker.getKey()).set(marker.getValue());
+    }
+    for (Map.Entry<String, Long> user : byUser.entrySet()) {
+      UserTimeline.commentCounter(user.getKey()).set(user.getValue());
+    }
+    SiteStats.totalCommentsCounter().set(total);
+
+    response.setContentType("text/plain;");
+    response.getWriter().println("Counted " + total + " comments on " + byMarker.size()
+        + " markers by " + byUser.size() + " users.");
+  }
+}
@@ -0,0 +1,164 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.appengine.api.datastore.AsyncDatastoreService;
+import com.google.appengine.api.datastore.DatastoreFailureException;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.Query.SortDirection;
+import com.google.appengine.api.users.UserService;
+import com.google.appengine.api.users.UserServiceFactory;
+import com.google.gson.Gson;
+import com.google.sps.data.Bootstrap;
+import com.google.sps.data.Comment;
+import com.google.sps.data.CommentThreads;
+import com.google.sps.data.CommentsSnapshot;
+import com.google.sps.data.Marker;
+import com.google.sps.data.SharedServices;
+import com.google.sps.data.User;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Servlet that returns everything the page needs to load in one response, instead of the
+ * page requesting the user, the comments and then each author and marker in turn.
+ *
+ * <p>Datastore lookups are started asynchronously and only waited on once nothing else
+ * can be started: the current user is read while the comments load, and then all the
+ * authors and markers are read together.
+ */
+@WebServlet("/bootstrap")
+public class BootstrapServlet extends HttpServlet {
+
+  /** Nickname of users who have not saved one, as /get-user reports it. */
+  private static final String DEFAULT_NICKNAME = "New User";
+
+  /** Most values Datastore accepts in one IN filter. */
+  private static final int MAX_IN_VALUES = 30;
+
+  private final Gson gson = SharedServices.getGson();
+  private final AsyncDatastoreService datastore = SharedServices.getAsyncDatastore();
+
+  @Override
+  public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    int maxComments = Integer.parseInt(request.getParameter("vis"));
+
+    UserService userService = UserServiceFactory.getUserService();
+    String userId = userService.isUserLoggedIn() ? userService.getCurrentUser().getUserId() : null;
+    List<Entity> userEntities = userId == null
+        ? null : queryUsers(Collections.singletonList(userId));
+
+    List<Comment> comments = getNewestComments(maxComments);
+
+    Set<String> authorIds = new LinkedHashSet<>();
+    List<Key> markerKeys = new ArrayList<>();
+    for (Comment comment : comments) {
+      if (comment.getUserId() != null) {
+        authorIds.add(comment.getUserId());
+      }
+      markerKeys.add(CommentThreads.markerKey(comment.getMarkerId()));
+    }
+    Future<Map<Key, Entity>> markerEntities = datastore.get(markerKeys);
+    List<List<Entity>> authorEntities = new ArrayList<>();
+    List<String> authorIdList = new ArrayList<>(authorIds);
+    for (int start = 0; start < authorIdList.size(); start += MAX_IN_VALUES) {
+      authorEntities.add(queryUsers(
+          authorIdList.subList(start, Math.min(start + MAX_IN_VALUES, authorIdList.size()))));
+    }
+
+    User user;
+    if (userId == null) {
+      user = new User(null, "", "Stranger", /*LoggedIn=*/false,
+          userService.createLoginURL("/"));
+    } else {
+      String nickname = userEntities.isEmpty()
+          ? DEFAULT_NICKNAME : (String) userEntities.get(0).getProperty("nickname");
+      user = new User(userService.getCurrentUser().getEmail(), userId, nickname,
+          /*LoggedIn=*/true, userService.createLogoutURL("/"));
+    }
+
+    Map<String, String> authors = new HashMap<>();
+    for (String authorId : authorIds) {
+      authors.put(authorId, DEFAULT_NICKNAME);
+    }
+    for (List<Entity> entities : authorEntities) {
+      for (Entity entity : entities) {
+        authors.put((String) entity.getProperty("id"), (String) entity.getProperty("nickname"));
+      }
+    }
+
+    Map<Long, Marker> markers = new HashMap<>();
+    try {
+      for (Entity entity : markerEntities.get().values()) {
+        long id = entity.getKey().getId();
+        markers.put(id, new Marker(id, (boolean) entity.getProperty("visible"),
+            (double) entity.getProperty("lat"), (double) entity.getProperty("lng")));
+      }
+    } catch (ExecutionException e) {
+      throw new DatastoreFailureException("Could not read markers", e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new DatastoreFailureException("Interrupted while reading markers", e);
+    }
+
+    // the user's session is part of the response
+    response.setHeader("Cache-Control", "private, no-cache");
+    response.setContentType("application/json;");
+    response.getWriter().println(gson.toJson(new Bootstrap(user, comments, authors, markers)));
+  }
+
+  /** @return the newest comments, from the shared snapshot when the page size allows */
+  private List<Comment> getNewestComments(int maxComments) {
+    if (maxComments < 1) {
+      return new ArrayList<>();
+    }
+    if (maxComments <= CommentsSnapshot.MAX_COMMENTS) {
+      return CommentsSnapshot.getInstance().getPage(maxComments).getComments();
+    }
+    Query query = new Query("Comment").addSort("timestamp", SortDirection.DESCENDING);
+    List<Comment> comments = new ArrayList<>();
+    for (Entity entity
+        : datastore.prepare(query).asIterable(FetchOptions.Builder.withLimit(maxComments))) {
+      comments.add(Comment.fromEntity(entity));
+    }
+    return comments;
+  }
+
+  /**
+   * Starts reading the User entities with the given ids.
+   *
+   * @return the entities, fetched in the background until the list is first used
+   */
+  private List<Entity> queryUsers(List<String> userIds) {
+    Query query = new Query("User")
+        .setFilter(new Query.FilterPredicate("id", Query.FilterOperator.IN, userIds));
+    return datastore.prepare(query).asList(FetchOptions.Builder.withDefaults());
+  }
+}
@@ -0,0 +1,135 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.gson.Gson;
+import com.google.sps.data.CommentEvents;
+import com.google.sps.data.SharedServices;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Servlet that pushes comment changes to the page as server-sent events, so the page
+ * does not have to reload the comment list to see them.
+ */
+@WebServlet(urlPatterns = "/comments/stream", asyncSupported = true)
+public class CommentStreamServlet extends HttpServlet {
+
+  /** How long a stream stays open; the browser's EventSource reconnects by itself. */
+  private static final long STREAM_TIMEOUT_MILLIS = 5 * 60 * 1000;
+
+  @Override
+  public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    response.setContentType("text/event-stream");
+    response.setCharacterEncoding("UTF-8");
+    response.setHeader("Cache-Control", "no-cache");
+
+    AsyncContext asyncContext = request.startAsync();
+    asyncContext.setTimeout(STREAM_TIMEOUT_MILLIS);
+    new Stream(asyncContext).start();
+  }
+
+  /** Delivers the events of one subscription to one open response. */
+  private static final class Stream implements AsyncListener {
+    private final AsyncContext asyncContext;
+    private final CommentEvents.Subscription subscription;
+    private final Gson gson = SharedServices.getGson();
+
+    /** Set while a drain is scheduled, so bursts of events share one container thread. */
+    private final AtomicBoolean draining = new AtomicBoolean();
+
+    private Stream(AsyncContext asyncContext) {
+      this.asyncContext = asyncContext;
+      this.subscription = CommentEvents.getInstance().subscribe(this::scheduleDrain);
+    }
+
+    private void start() throws IOException {
+      asyncContext.addListener(this);
+      // Sends the headers, so the browser knows the stream is open.
+      PrintWriter writer = asyncContext.getResponse().getWriter();
+      writer.print("retry: 3000\n\n");
+      writer.flush();
+    }
+
+    private void scheduleDrain() {
+      if (draining.compareAndSet(false, true)) {
+        try {
+          asyncContext.start(this::drain);
+        } catch (IllegalStateException e) {
+          // The stream completed or timed out before it was unsubscribed.
+          close();
+        }
+      }
+    }
+
+    private synchronized void drain() {
+      draining.set(false);
+      try {
+        PrintWriter writer = asyncContext.getResponse().getWriter();
+        if (subscription.checkOverflow()) {
+          // Some events were dropped, so the page has to reload the whole list.
+          writer.print("event: reset\ndata: {}\n\n");
+        }
+        for (CommentEvents.Delivery delivery : subscription.drain()) {
+          writer.print("id: " + delivery.getEventId() + "\n");
+          writer.print("event: " + delivery.getEvent().getType() + "\n");
+          writer.print("data: " + gson.toJson(delivery.getEvent()) + "\n\n");
+        }
+        writer.flush();
+        if (writer.checkError()) {
+          close();
+        }
+      } catch (IOException | IllegalStateException e) {
+        // The client went away or the stream already ended.
+        close();
+      }
+    }
+
+    private void close() {
+      subscription.cancel();
+      try {
+        asyncContext.complete();
+      } catch (IllegalStateException e) {
+        // already completed
+      }
+    }
+
+    @Override
+    public void onComplete(AsyncEvent event) {
+      subscription.cancel();
+    }
+
+    @Override
+    public void onTimeout(AsyncEvent event) {
+      close();
+    }
+
+    @Override
+    public void onError(AsyncEvent event) {
+      close();
+    }
+
+    @Override
+    public void onStartAsync(AsyncEvent event) {}
+  }
+}
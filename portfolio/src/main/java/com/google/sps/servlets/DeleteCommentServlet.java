@@ -15,9 +15,12 @@
 package com.google.sps.servlets;
 
 import com.google.appengine.api.datastore.DatastoreService;
-import com.google.appengine.api.datastore.DatastoreServiceFactory;
-import com.google.appengine.api.datastore.Key;
-import com.google.appengine.api.datastore.KeyFactory;
+import com.google.sps.data.CommentEvent;
+import com.google.sps.data.CommentEvents;
+import com.google.sps.data.CommentSearchIndex;
+import com.google.sps.data.CommentThreads;
+import com.google.sps.data.CommentsSnapshot;
+import com.google.sps.data.SharedServices;
 import java.io.IOException;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
@@ -28,12 +31,16 @@ import javax.servlet.http.HttpServletResponse;
 @WebServlet("/delete-comment")
 public class DeleteCommentServlet extends HttpServlet {
 
+  private final DatastoreService datastore = SharedServices.getDatastore();
+
   @Override
   public void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
     long id = Long.parseLong(request.getParameter("id"));
+    long markerId = Long.parseLong(request.getParameter("marker-id"));
 
-    Key commentEntityKey = KeyFactory.createKey("Comment", id);
-    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
-    datastore.delete(commentEntityKey);
+    CommentThreads.deleteComment(datastore, CommentThreads.commentKey(markerId, id));
+    CommentsSnapshot.getInstance().invalidate();
+    CommentSearchIndex.getInstance().remove(id);
+    CommentEvents.getInstance().publish(CommentEvent.deleted(id, markerId));
   }
 }
\ No newline at end of file
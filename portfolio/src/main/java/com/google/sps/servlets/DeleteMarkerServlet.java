@@ -15,25 +15,41 @@
 package com.google.sps.servlets;
 
 import com.google.appengine.api.datastore.DatastoreService;
-import com.google.appengine.api.datastore.DatastoreServiceFactory;
-import com.google.appengine.api.datastore.Key;
-import com.google.appengine.api.datastore.KeyFactory;
+import com.google.sps.data.CommentEvent;
+import com.google.sps.data.CommentEvents;
+import com.google.sps.data.CommentSearchIndex;
+import com.google.sps.data.CommentThreads;
+import com.google.sps.data.CommentsSnapshot;
+import com.google.sps.data.MarkerClusters;
+import com.google.sps.data.ResponseCache;
+import com.google.sps.data.SharedServices;
 import java.io.IOException;
+import java.util.List;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
-/** Servlet responsible for deleting tasks. */
+/** Servlet responsible for deleting markers along with the comments tagged to them. */
 @WebServlet("/delete-marker")
 public class DeleteMarkerServlet extends HttpServlet {
 
+  private final DatastoreService datastore = SharedServices.getDatastore();
+
   @Override
   public void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
     long id = Long.parseLong(request.getParameter("id"));
 
-    Key markerEntityKey = KeyFactory.createKey("Marker", id);
-    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
-    datastore.delete(markerEntityKey);
+    // Deletes the comments a batch per transaction together with their counts, so a
+    // comment deleted by /delete-comment at the same time is only counted once.
+    List<Long> deletedIds = CommentThreads.deleteThread(datastore, id);
+
+    MarkerClusters.getInstance().remove(id);
+    ResponseCache.getInstance().invalidate(ResponseCache.key("/markers", Long.toString(id)));
+    CommentsSnapshot.getInstance().invalidate();
+    for (long commentId : deletedIds) {
+      CommentSearchIndex.getInstance().remove(commentId);
+      CommentEvents.getInstance().publish(CommentEvent.deleted(commentId, id));
+    }
   }
 }
\ No newline at end of file
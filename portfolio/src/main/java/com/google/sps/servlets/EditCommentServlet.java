@@ -14,12 +14,24 @@
 
 package com.google.sps.servlets;
 
-import com.google.appengine.api.datastore.DatastoreService;
-import com.google.appengine.api.datastore.DatastoreServiceFactory;
-import com.google.appengine.api.datastore.Key;
-import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.datastore.AsyncDatastoreService;
+import com.google.appengine.api.datastore.DatastoreFailureException;
 import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.EntityNotFoundException;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.Transaction;
+import com.google.appengine.api.datastore.TransactionOptions;
+import com.google.sps.data.Comment;
+import com.google.sps.data.CommentEvent;
+import com.google.sps.data.CommentEvents;
+import com.google.sps.data.CommentSearchIndex;
+import com.google.sps.data.CommentThreads;
+import com.google.sps.data.CommentsSnapshot;
+import com.google.sps.data.SharedServices;
+import com.google.sps.data.SiteStats;
 import java.io.IOException;
+import java.util.ConcurrentModificationException;
+import java.util.concurrent.ExecutionException;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
@@ -29,22 +41,82 @@ import javax.servlet.http.HttpServletResponse;
 @WebServlet("/edit-comment")
 public class EditCommentServlet extends HttpServlet {
 
+  /** Number of times an edit is tried before giving up on a contended comment. */
+  private static final int MAX_ATTEMPTS = 3;
+
+  private final AsyncDatastoreService datastore = SharedServices.getAsyncDatastore();
+
   @Override
   public void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
     long id = Long.parseLong(request.getParameter("id"));
     String commentText = (String) request.getParameter("comment-text");
     long markerId = Long.parseLong(request.getParameter("marker-id"));
+    long prevMarkerId = Long.parseLong(request.getParameter("prev-marker-id"));
+
+    Key commentEntityKey = CommentThreads.commentKey(prevMarkerId, id);
 
-    Key commentEntityKey = KeyFactory.createKey("Comment", id);
-    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+    // Retry when another edit of the same comment commits between our read and write.
     Entity commentEntity;
+    for (int attempt = 1; ; attempt++) {
+      try {
+        commentEntity = updateComment(datastore, commentEntityKey, commentText, markerId);
+        break;
+      } catch (ConcurrentModificationException e) {
+        if (attempt == MAX_ATTEMPTS) {
+          throw e;
+        }
+      }
+    }
+
+    Comment comment = Comment.fromEntity(commentEntity);
+    CommentsSnapshot.getInstance().invalidate();
+    CommentSearchIndex.getInstance().put(comment);
+    CommentEvents.getInstance().publish(CommentEvent.edited(comment, prevMarkerId));
+  }
+
+  /**
+   * Reads, modifies and writes the comment in a single transaction. A comment tagged to
+   * a new marker is moved under that marker, which touches two entity groups, and the
+   * two markers' comment counts are updated in the same transaction.
+   * @return the comment entity as stored
+   */
+  private Entity updateComment(AsyncDatastoreService datastore, Key commentEntityKey,
+      String commentText, long markerId) {
+    Transaction txn = null;
     try {
-      commentEntity = datastore.get(commentEntityKey);
-    } catch (Exception e){
-      throw new IllegalArgumentException("No comment with given id: "+id);
+      txn = datastore.beginTransaction(TransactionOptions.Builder.withXG(true)).get();
+      Entity commentEntity = datastore.get(txn, commentEntityKey).get();
+
+      if (commentEntityKey.getParent().getId() != markerId) {
+        Entity movedEntity = CommentThreads.movedCommentEntity(markerId, commentEntity);
+        datastore.delete(txn, commentEntityKey).get();
+        commentEntity = movedEntity;
+        long prevMarkerId = commentEntityKey.getParent().getId();
+        SiteStats.markerCommentsCounter(prevMarkerId)
+            .increment(SharedServices.getDatastore(), txn, -1);
+        SiteStats.markerCommentsCounter(markerId)
+            .increment(SharedServices.getDatastore(), txn, 1);
+      }
+      commentEntity.setProperty("comment-text", commentText);
+      commentEntity.setProperty("marker-id", markerId);
+      datastore.put(txn, commentEntity).get();
+      txn.commitAsync().get();
+      return commentEntity;
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof EntityNotFoundException) {
+        throw new IllegalArgumentException("No comment with given id: "+commentEntityKey.getId());
+      }
+      if (e.getCause() instanceof ConcurrentModificationException) {
+        throw (ConcurrentModificationException) e.getCause();
+      }
+      throw new DatastoreFailureException("Could not edit comment", e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new DatastoreFailureException("Interrupted while editing comment", e);
+    } finally {
+      if (txn != null && txn.isActive()) {
+        txn.rollback();
+      }
     }
-    commentEntity.setProperty("comment-text", commentText);
-    commentEntity.setProperty("marker-id", markerId);
-    datastore.put(commentEntity);
   }
 }
\ No newline at end of file
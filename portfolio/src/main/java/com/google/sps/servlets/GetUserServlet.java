@@ -14,25 +14,32 @@
 
 package com.google.sps.servlets;
 
-import com.google.appengine.api.users.UserService;
-import com.google.appengine.api.users.UserServiceFactory;
 import java.io.IOException;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import com.google.sps.data.SharedServices;
 import com.google.sps.data.User;
 import com.google.gson.Gson;
 import com.google.appengine.api.datastore.Query;
 import com.google.appengine.api.datastore.Entity;
 import com.google.appengine.api.datastore.PreparedQuery;
 import com.google.appengine.api.datastore.DatastoreService;
-import com.google.appengine.api.datastore.DatastoreServiceFactory;
 
 /**Servlet that retrieves a user's information*/
 @WebServlet("/get-user")
 public class GetUserServlet extends HttpServlet {
 
+  /**
+   * How long this instance serves a user from ResponseCache. Nickname changes made on
+   * other instances can take this long to show up.
+   */
+  private static final long CACHE_MILLIS = 60 * 1000;
+
+  private final Gson gson = SharedServices.getGson();
+  private final DatastoreService datastore = SharedServices.getDatastore();
+
   @Override
   public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
     response.setContentType("text/json");
@@ -41,20 +48,16 @@ public class GetUserServlet extends HttpServlet {
     Entity requestedUserEntity = getUserEntity(requestedUserId);
     String nickname = (String) requestedUserEntity.getProperty("nickname");
 
-    UserService userService = UserServiceFactory.getUserService();
-    String currUserId = "";
-    if (userService.isUserLoggedIn()) {
-      currUserId = (String) userService.getCurrentUser().getUserId();
-    }
+    // The same for every viewer, so it can be cached; the page gets the current user from
+    // /user-login.
+    User user = new User(requestedUserId, nickname, /*LoggedIn=*/false);
 
-    User user;
-    if (currUserId == requestedUserId) {
-      user = new User(requestedUserId, nickname, /*LoggedIn=*/true);
-    } else {
-      user = new User(requestedUserId, nickname, /*LoggedIn=*/false);
-    }
+    // Nicknames change, so clients revalidate, but the ETag changes only when they do.
+    Long lastModified = (Long) requestedUserEntity.getProperty("last-modified");
+    response.setHeader("Cache-Control", "public, no-cache");
+    response.setHeader("ETag", "\"" + (lastModified == null ? 0 : lastModified) + "\"");
+    ResponseCacheFilter.cacheFor(request, CACHE_MILLIS);
 
-    Gson gson = new Gson();
     String userJson;
     userJson = gson.toJson(user);
     response.getWriter().println(userJson);
@@ -64,7 +67,6 @@ public class GetUserServlet extends HttpServlet {
    * @return the entity of the current user containing their userId and nickname
    */
   private Entity getUserEntity(String userId) {
-    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
     Query query = new Query("User").setFilter
         (new Query.FilterPredicate("id", Query.FilterOperator.EQUAL, userId));
     PreparedQuery results = datastore.prepare(query);
@@ -15,13 +15,14 @@
 package com.google.sps.servlets;
 
 import com.google.appengine.api.datastore.DatastoreService;
-import com.google.appengine.api.datastore.DatastoreServiceFactory;
 import com.google.appengine.api.datastore.Entity;
 import com.google.appengine.api.datastore.PreparedQuery;
 import com.google.appengine.api.datastore.Query;
 import com.google.appengine.api.datastore.Query.SortDirection;
 import com.google.gson.Gson;
 import com.google.sps.data.Comment;
+import com.google.sps.data.CommentsSnapshot;
+import com.google.sps.data.SharedServices;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
@@ -34,20 +35,57 @@ import javax.servlet.http.HttpServletResponse;
 @WebServlet("/list-comments")
 public class ListCommentsServlet extends HttpServlet {
 
+  private final Gson gson = SharedServices.getGson();
+  private final DatastoreService datastore = SharedServices.getDatastore();
 
   @Override
   public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
     response.setContentType("application/json;");
     int maxComments = Integer.parseInt(request.getParameter("vis"));
-    response.getWriter().println(getJson(maxComments));
+
+    // page sizes the page never asks for are not worth caching
+    if (maxComments < 1 || maxComments > CommentsSnapshot.MAX_COMMENTS) {
+      response.getWriter().println(getJson(maxComments));
+      return;
+    }
+
+    CommentsSnapshot.Page page = CommentsSnapshot.getInstance().getPage(maxComments);
+    boolean gzip = acceptsGzip(request);
+    String etag = gzip ? page.getGzipEtag() : page.getEtag();
+
+    // clients must revalidate so new comments show up, but usually get a 304
+    response.setHeader("Cache-Control", "no-cache");
+    response.setHeader("Vary", "Accept-Encoding");
+    response.setHeader("ETag", etag);
+
+    String ifNoneMatch = request.getHeader("If-None-Match");
+    if (ifNoneMatch != null && (ifNoneMatch.contains(etag) || ifNoneMatch.trim().equals("*"))) {
+      response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+      return;
+    }
+
+    byte[] body = gzip ? page.getGzipJson() : page.getJson();
+    if (gzip) {
+      response.setHeader("Content-Encoding", "gzip");
+    }
+    response.setContentLength(body.length);
+    response.getOutputStream().write(body);
+  }
+
+  /**
+   * @return whether the client accepts gzip-compressed responses
+   */
+  private boolean acceptsGzip(HttpServletRequest request) {
+    String acceptEncoding = request.getHeader("Accept-Encoding");
+    return acceptEncoding != null && acceptEncoding.toLowerCase().contains("gzip");
   }
 
   /**
-   * @return the three most recent comments in json format
+   * @return the maxComments most recent comments in json format, read straight from
+   *         Datastore
    */
   public String getJson (int maxComments){
     List<Comment> comments = new ArrayList<>(); 
-    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
     
     // get all comment entities from Datastore
     Query query = new Query("Comment").addSort("timestamp", SortDirection.DESCENDING);
@@ -55,17 +93,10 @@ public class ListCommentsServlet extends HttpServlet {
     
     // retrieve text content of the comments
     for (Entity entity : results.asIterable()) {
-      long id = entity.getKey().getId();
-      String commentText = (String) entity.getProperty("comment-text");
-      String userId = (String) entity.getProperty("user-id");
-      long markerId = (long) entity.getProperty("marker-id");
-      long timestamp = (long) entity.getProperty("timestamp");
-      Comment comment = new Comment(id, commentText, markerId, userId, timestamp);
-      comments.add(comment);
+      comments.add(Comment.fromEntity(entity));
       if (comments.size() == maxComments) break;
     } 
     // convert to json
-    Gson gson = new Gson();
     String json = gson.toJson(comments);
 
     return json; 
@@ -21,23 +21,26 @@ import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import com.google.sps.data.ResponseCache;
+import com.google.sps.data.SharedServices;
 import com.google.sps.data.User;
 import com.google.gson.Gson;
 import com.google.appengine.api.datastore.Query;
 import com.google.appengine.api.datastore.Entity;
 import com.google.appengine.api.datastore.PreparedQuery;
 import com.google.appengine.api.datastore.DatastoreService;
-import com.google.appengine.api.datastore.DatastoreServiceFactory;
 
 /** Server that logs users in and out and updates their information*/
 @WebServlet("/user-login")
 public class LoginServlet extends HttpServlet {
 
+  private final Gson gson = SharedServices.getGson();
+  private final DatastoreService datastore = SharedServices.getDatastore();
+
   @Override
   public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
     response.setContentType("text/json");
 
-    Gson gson = new Gson();
     User user;
     String userJson;
 
@@ -71,15 +74,15 @@ public class LoginServlet extends HttpServlet {
     String nickname = request.getParameter("nickname");
     Entity userEntity = getUserEntity(userId);
     userEntity.setProperty("nickname", nickname);
-    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+    userEntity.setUnindexedProperty("last-modified", System.currentTimeMillis());
     datastore.put(userEntity);
+    ResponseCache.getInstance().invalidate(ResponseCache.key("/get-user", userId));
   }
 
   /**
    * @return the entity of the current user containing their userId and nickname
    */
   private Entity getUserEntity(String userId) {
-    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
     Query query = new Query("User").setFilter
         (new Query.FilterPredicate("id", Query.FilterOperator.EQUAL, userId));
     PreparedQuery results = datastore.prepare(query);
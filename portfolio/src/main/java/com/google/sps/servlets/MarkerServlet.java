@@ -15,12 +15,14 @@
 package com.google.sps.servlets;
 
 import com.google.appengine.api.datastore.DatastoreService;
-import com.google.appengine.api.datastore.DatastoreServiceFactory;
 import com.google.appengine.api.datastore.Entity;
 import com.google.appengine.api.datastore.Key;
 import com.google.appengine.api.datastore.KeyFactory;
 import com.google.gson.Gson;
 import com.google.sps.data.Marker;
+import com.google.sps.data.MarkerClusters;
+import com.google.sps.data.SharedServices;
+import com.google.sps.data.SiteStats;
 import java.io.IOException;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
@@ -33,6 +35,12 @@ import com.google.appengine.api.datastore.Query;
 @WebServlet("/markers")
 public class MarkerServlet extends HttpServlet {
 
+  /** How long this instance serves a marker from ResponseCache. */
+  private static final long CACHE_MILLIS = 60 * 60 * 1000;
+
+  private final Gson gson = SharedServices.getGson();
+  private final DatastoreService datastore = SharedServices.getDatastore();
+
   @Override
   public void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
     double lat = Double.parseDouble(request.getParameter("lat"));
@@ -43,11 +51,15 @@ public class MarkerServlet extends HttpServlet {
     markerEntity.setProperty("lat", lat);
     markerEntity.setProperty("lng", lng);
     markerEntity.setProperty("visible", visible);
+    markerEntity.setUnindexedProperty("last-modified", System.currentTimeMillis());
 
-    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
     datastore.put(markerEntity);
 
     long markerId = markerEntity.getKey().getId();
+    SiteStats.markersCreatedTodayCounter().increment(1);
+    if (visible) {
+      MarkerClusters.getInstance().add(markerId, lat, lng);
+    }
     response.getWriter().println(markerId);
   }
 
@@ -57,7 +69,6 @@ public class MarkerServlet extends HttpServlet {
 
     Key markerEntityKey = KeyFactory.createKey("Marker", id);
   
-    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
     Entity markerEntity;
     try {
       markerEntity = datastore.get(markerEntityKey);
@@ -69,8 +80,14 @@ public class MarkerServlet extends HttpServlet {
     boolean visible = (boolean)markerEntity.getProperty("visible");
 
     Marker marker = new Marker(id, visible, lat, lng);
-    
-    Gson gson = new Gson();
+
+    // Markers are never changed once created, but they can be deleted, so clients revalidate.
+    Long lastModified = (Long) markerEntity.getProperty("last-modified");
+    response.setContentType("application/json;");
+    response.setHeader("Cache-Control", "public, no-cache");
+    response.setHeader("ETag", "\"" + id + "-" + (lastModified == null ? 0 : lastModified) + "\"");
+    ResponseCacheFilter.cacheFor(request, CACHE_MILLIS);
+
     String json = gson.toJson(marker);
 
     response.getWriter().println(json);
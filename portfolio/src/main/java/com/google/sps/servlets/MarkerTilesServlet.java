@@ -0,0 +1,65 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.gson.Gson;
+import com.google.sps.data.MarkerCluster;
+import com.google.sps.data.MarkerClusters;
+import com.google.sps.data.SharedServices;
+import java.io.IOException;
+import java.util.List;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/** Servlet that returns the marker clusters inside one map tile. */
+@WebServlet("/marker-tiles")
+public class MarkerTilesServlet extends HttpServlet {
+
+  private final Gson gson = SharedServices.getGson();
+
+  @Override
+  public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    int zoom;
+    long x;
+    long y;
+    try {
+      zoom = Integer.parseInt(request.getParameter("z"));
+      x = Long.parseLong(request.getParameter("x"));
+      y = Long.parseLong(request.getParameter("y"));
+    } catch (NumberFormatException e) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Expected numeric z, x and y");
+      return;
+    }
+
+    if (zoom < 0 || zoom > MarkerClusters.MAX_ZOOM) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST,
+          "Zoom level must be between 0 and " + MarkerClusters.MAX_ZOOM);
+      return;
+    }
+    long tiles = 1L << zoom;
+    if (x < 0 || x >= tiles || y < 0 || y >= tiles) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST,
+          "Tile x and y must be between 0 and " + (tiles - 1) + " at zoom level " + zoom);
+      return;
+    }
+
+    List<MarkerCluster> clusters = MarkerClusters.getInstance().getTile(zoom, x, y);
+
+    response.setContentType("application/json;");
+    response.getWriter().println(gson.toJson(clusters));
+  }
+}
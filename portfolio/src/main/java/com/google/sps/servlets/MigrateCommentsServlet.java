@@ -0,0 +1,93 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.users.UserService;
+import com.google.appengine.api.users.UserServiceFactory;
+import com.google.sps.data.CommentThreads;
+import com.google.sps.data.SharedServices;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Admin-only servlet that moves comments stored as root entities under the Marker
+ * they are tagged to. Running it more than once is harmless.
+ */
+@WebServlet("/migrate-comments")
+public class MigrateCommentsServlet extends HttpServlet {
+
+  /** Largest number of entities Datastore accepts in a single put or delete. */
+  private static final int MAX_BATCH_SIZE = 500;
+
+  private final DatastoreService datastore = SharedServices.getDatastore();
+
+  @Override
+  public void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    UserService userService = UserServiceFactory.getUserService();
+    if (!userService.isUserLoggedIn() || !userService.isUserAdmin()) {
+      response.sendError(HttpServletResponse.SC_FORBIDDEN);
+      return;
+    }
+
+    List<Entity> movedEntities = new ArrayList<>();
+    List<Key> oldKeys = new ArrayList<>();
+    int migrated = 0;
+
+    for (Entity entity : datastore.prepare(new Query("Comment")).asIterable()) {
+      if (entity.getParent() != null) {
+        continue;
+      }
+      // Root comment ids came from the kind-wide range, so they stay unique under markers.
+      Entity movedEntity =
+          CommentThreads.movedCommentEntity((long) entity.getProperty("marker-id"), entity);
+      movedEntities.add(movedEntity);
+      oldKeys.add(entity.getKey());
+
+      if (movedEntities.size() == MAX_BATCH_SIZE) {
+        migrated += moveBatch(datastore, movedEntities, oldKeys);
+      }
+    }
+    migrated += moveBatch(datastore, movedEntities, oldKeys);
+
+    response.setContentType("text/plain;");
+    response.getWriter().println("Migrated " + migrated + " comments.");
+  }
+
+  /**
+   * Stores the moved comments before deleting the originals, so an interrupted
+   * migration never loses a comment.
+   * @return the number of comments moved
+   */
+  private int moveBatch(DatastoreService datastore, List<Entity> movedEntities,
+      List<Key> oldKeys) {
+    int moved = movedEntities.size();
+    if (moved > 0) {
+      datastore.put(movedEntities);
+      datastore.delete(oldKeys);
+      movedEntities.clear();
+      oldKeys.clear();
+    }
+    return moved;
+  }
+}
@@ -14,9 +14,17 @@
 
 package com.google.sps.servlets;
 
-import com.google.appengine.api.datastore.DatastoreService;
-import com.google.appengine.api.datastore.DatastoreServiceFactory;
 import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.users.UserService;
+import com.google.appengine.api.users.UserServiceFactory;
+import com.google.sps.data.Comment;
+import com.google.sps.data.CommentEvent;
+import com.google.sps.data.CommentEvents;
+import com.google.sps.data.CommentSearchIndex;
+import com.google.sps.data.CommentsSnapshot;
+import com.google.sps.data.CommentThreads;
+import com.google.sps.data.CommentWriter;
 import java.io.IOException;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
@@ -31,16 +39,24 @@ public class NewCommentServlet extends HttpServlet {
   public void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
     String commentText = (String) request.getParameter("comment-text");
     long markerId = Long.parseLong(request.getParameter("marker-id"));
-    String userId = (String) request.getParameter("user-id");
+    // Take the author from the login rather than trusting the page; logged-out
+    // visitors comment with an empty id, as before.
+    UserService userService = UserServiceFactory.getUserService();
+    String userId = userService.isUserLoggedIn() ? userService.getCurrentUser().getUserId() : "";
     long timestamp = System.currentTimeMillis();
 
-    Entity commentEntity = new Entity("Comment");
+    Entity commentEntity = CommentThreads.newCommentEntity(markerId);
     commentEntity.setProperty("comment-text", commentText);
     commentEntity.setProperty("marker-id", markerId);
     commentEntity.setProperty("user-id", userId);
     commentEntity.setProperty("timestamp", timestamp);
 
-    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
-    datastore.put(commentEntity);
+    // stores the comment and adds it to the user, marker and total counts in one transaction
+    Key commentKey = CommentWriter.getInstance().put(commentEntity);
+    CommentsSnapshot.getInstance().invalidate();
+
+    Comment comment = new Comment(commentKey.getId(), commentText, markerId, userId, timestamp);
+    CommentSearchIndex.getInstance().put(comment);
+    CommentEvents.getInstance().publish(CommentEvent.created(comment));
   }
 }
\ No newline at end of file
@@ -0,0 +1,89 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.appengine.api.users.UserService;
+import com.google.appengine.api.users.UserServiceFactory;
+import com.google.sps.data.RateLimiter;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.annotation.WebFilter;
+import javax.servlet.annotation.WebInitParam;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Filter that limits how quickly each user and each IP address can write, so one client
+ * cannot use up the Datastore write quota. Requests over the limit get a 429 response.
+ *
+ * <p>Note: IP addresses get a higher limit than users, since many users can share one.
+ */
+@WebFilter(
+    urlPatterns = {
+        "/new-comment", "/edit-comment", "/markers", "/delete-comment", "/delete-marker"},
+    initParams = {
+        @WebInitParam(name = "user-burst", value = "20"),
+        @WebInitParam(name = "user-per-minute", value = "20"),
+        @WebInitParam(name = "ip-burst", value = "60"),
+        @WebInitParam(name = "ip-per-minute", value = "60")})
+public class RateLimitFilter implements Filter {
+
+  private static final int SC_TOO_MANY_REQUESTS = 429;
+
+  private RateLimiter userLimiter;
+  private RateLimiter ipLimiter;
+
+  @Override
+  public void init(FilterConfig config) {
+    userLimiter = new RateLimiter(Integer.parseInt(config.getInitParameter("user-burst")),
+        Double.parseDouble(config.getInitParameter("user-per-minute")));
+    ipLimiter = new RateLimiter(Integer.parseInt(config.getInitParameter("ip-burst")),
+        Double.parseDouble(config.getInitParameter("ip-per-minute")));
+  }
+
+  @Override
+  public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+      throws IOException, ServletException {
+    HttpServletRequest httpRequest = (HttpServletRequest) request;
+    // only writes are limited; GET /markers is a read
+    if (!"POST".equals(httpRequest.getMethod())) {
+      chain.doFilter(request, response);
+      return;
+    }
+
+    long waitNanos = ipLimiter.tryAcquire(request.getRemoteAddr());
+    UserService userService = UserServiceFactory.getUserService();
+    if (waitNanos == 0 && userService.isUserLoggedIn()) {
+      waitNanos = userLimiter.tryAcquire(userService.getCurrentUser().getUserId());
+    }
+    if (waitNanos > 0) {
+      HttpServletResponse httpResponse = (HttpServletResponse) response;
+      long retryAfterSeconds = TimeUnit.NANOSECONDS.toSeconds(waitNanos - 1) + 1;
+      httpResponse.setHeader("Retry-After", Long.toString(retryAfterSeconds));
+      httpResponse.sendError(SC_TOO_MANY_REQUESTS, "Too many requests");
+      return;
+    }
+    chain.doFilter(request, response);
+  }
+
+  @Override
+  public void destroy() {}
+}
@@ -0,0 +1,173 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.sps.data.ResponseCache;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.WriteListener;
+import javax.servlet.annotation.WebFilter;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+/**
+ * Filter that serves repeat GETs of a marker or user from ResponseCache, so they reach
+ * neither the servlet nor Datastore, and answers If-None-Match with 304 when the ETag
+ * still matches.
+ *
+ * <p>A servlet opts a response into the cache by calling cacheFor and setting its ETag
+ * and Cache-Control headers.
+ */
+@WebFilter({"/markers", "/get-user"})
+public class ResponseCacheFilter implements Filter {
+
+  private static final String CACHE_MILLIS_ATTRIBUTE = ResponseCacheFilter.class.getName();
+
+  /** Lets the response to this request be served from the cache for the given time. */
+  public static void cacheFor(HttpServletRequest request, long millis) {
+    request.setAttribute(CACHE_MILLIS_ATTRIBUTE, millis);
+  }
+
+  @Override
+  public void init(FilterConfig config) {}
+
+  @Override
+  public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+      throws IOException, ServletException {
+    HttpServletRequest httpRequest = (HttpServletRequest) request;
+    HttpServletResponse httpResponse = (HttpServletResponse) response;
+    String id = request.getParameter("id");
+    if (!"GET".equals(httpRequest.getMethod()) || id == null) {
+      chain.doFilter(request, response);
+      return;
+    }
+
+    String key = ResponseCache.key(httpRequest.getServletPath(), id);
+    ResponseCache.Entry entry = ResponseCache.getInstance().get(key);
+    if (entry != null) {
+      httpResponse.setContentType(entry.getContentType());
+      httpResponse.setHeader("Cache-Control", entry.getCacheControl());
+      httpResponse.setHeader("ETag", entry.getEtag());
+      send(httpRequest, httpResponse, entry.getEtag(), entry.getBody());
+      return;
+    }
+
+    CapturingResponse capture = new CapturingResponse(httpResponse);
+    chain.doFilter(request, capture);
+    byte[] body = capture.getBody();
+    String etag = httpResponse.getHeader("ETag");
+    Long cacheMillis = (Long) request.getAttribute(CACHE_MILLIS_ATTRIBUTE);
+    if (capture.getStatus() == HttpServletResponse.SC_OK && etag != null && cacheMillis != null) {
+      ResponseCache.getInstance().put(key, new ResponseCache.Entry(body,
+          httpResponse.getContentType(), etag, httpResponse.getHeader("Cache-Control"),
+          System.currentTimeMillis() + cacheMillis));
+    }
+    send(httpRequest, httpResponse, etag, body);
+  }
+
+  @Override
+  public void destroy() {}
+
+  /** Sends the body, or a 304 if the client already has the version with this ETag. */
+  private static void send(HttpServletRequest request, HttpServletResponse response,
+      String etag, byte[] body) throws IOException {
+    String ifNoneMatch = request.getHeader("If-None-Match");
+    if (etag != null && ifNoneMatch != null
+        && (ifNoneMatch.contains(etag) || ifNoneMatch.trim().equals("*"))) {
+      response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+      return;
+    }
+    if (response.isCommitted()) {
+      // the servlet sent an error page itself
+      return;
+    }
+    response.setContentLength(body.length);
+    response.getOutputStream().write(body);
+  }
+
+  /** Response that keeps the body in memory instead of sending it. */
+  private static final class CapturingResponse extends HttpServletResponseWrapper {
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    private PrintWriter writer;
+    private ServletOutputStream outputStream;
+
+    private CapturingResponse(HttpServletResponse response) {
+      super(response);
+    }
+
+    @Override
+    public PrintWriter getWriter() throws IOException {
+      if (writer == null) {
+        writer = new PrintWriter(new OutputStreamWriter(buffer, getCharacterEncoding()));
+      }
+      return writer;
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() {
+      if (outputStream == null) {
+        outputStream = new ServletOutputStream() {
+          @Override
+          public void write(int b) {
+            buffer.write(b);
+          }
+
+          @Override
+          public void write(byte[] bytes, int offset, int length) {
+            buffer.write(bytes, offset, length);
+          }
+
+          @Override
+          public boolean isReady() {
+            return true;
+          }
+
+          /** Writes to memory never block, so the listener may write right away. */
+          @Override
+          public void setWriteListener(WriteListener listener) {
+            try {
+              listener.onWritePossible();
+            } catch (IOException | RuntimeException e) {
+              listener.onError(e);
+            }
+          }
+        };
+      }
+      return outputStream;
+    }
+
+    @Override
+    public void flushBuffer() {
+      // nothing is sent until the filter has the whole body
+    }
+
+    private byte[] getBody() {
+      if (writer != null) {
+        writer.flush();
+      }
+      return buffer.toByteArray();
+    }
+  }
+}
@@ -0,0 +1,59 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.gson.Gson;
+import com.google.sps.data.Comment;
+import com.google.sps.data.CommentSearchIndex;
+import com.google.sps.data.SharedServices;
+import java.io.IOException;
+import java.util.List;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/** Servlet that returns the comments matching a search, best matches first. */
+@WebServlet("/search-comments")
+public class SearchCommentsServlet extends HttpServlet {
+
+  /** Number of results returned when the request does not set a limit. */
+  private static final int DEFAULT_LIMIT = 20;
+
+  /** Largest number of results a request can ask for. */
+  private static final int MAX_LIMIT = 100;
+
+  private final Gson gson = SharedServices.getGson();
+
+  @Override
+  public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    String query = request.getParameter("q");
+    String limitParam = request.getParameter("limit");
+    int limit = DEFAULT_LIMIT;
+    if (limitParam != null) {
+      try {
+        limit = Math.max(1, Math.min(Integer.parseInt(limitParam), MAX_LIMIT));
+      } catch (NumberFormatException e) {
+        response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Expected a numeric limit");
+        return;
+      }
+    }
+
+    List<Comment> comments = CommentSearchIndex.getInstance().search(query, limit);
+
+    response.setContentType("application/json;");
+    response.getWriter().println(gson.toJson(comments));
+  }
+}
@@ -0,0 +1,55 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.gson.Gson;
+import com.google.sps.data.SharedServices;
+import com.google.sps.data.SiteStats;
+import java.io.IOException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/** Servlet that returns live comment and marker counts, optionally for one marker. */
+@WebServlet("/stats")
+public class StatsServlet extends HttpServlet {
+
+  private final Gson gson = SharedServices.getGson();
+
+  @Override
+  public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    String markerIdParam = request.getParameter("marker-id");
+    Long markerComments = null;
+    if (markerIdParam != null) {
+      long markerId;
+      try {
+        markerId = Long.parseLong(markerIdParam);
+      } catch (NumberFormatException e) {
+        response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Expected a numeric marker-id");
+        return;
+      }
+      markerComments = SiteStats.markerCommentsCounter(markerId).getCount();
+    }
+
+    SiteStats stats = new SiteStats(
+        SiteStats.totalCommentsCounter().getCount(),
+        SiteStats.markersCreatedTodayCounter().getCount(),
+        markerComments);
+
+    response.setContentType("application/json;");
+    response.getWriter().println(gson.toJson(stats));
+  }
+}
@@ -0,0 +1,195 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.sps.data.RequestMetrics;
+import com.google.sps.data.Tracing;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.concurrent.ThreadLocalRandom;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.WriteListener;
+import javax.servlet.annotation.WebFilter;
+import javax.servlet.annotation.WebInitParam;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+/**
+ * Filter that records how long every request takes, and for a sample of them how long
+ * they spend in Datastore, serializing JSON and writing the response. The results are
+ * served by MetricsServlet.
+ *
+ * <p>The sample-rate parameter is the fraction of requests traced; at 0 only the total
+ * duration is recorded.
+ */
+// async, so that CommentStreamServlet can still start an asynchronous response behind it
+@WebFilter(
+    urlPatterns = "/*",
+    asyncSupported = true,
+    initParams = @WebInitParam(name = "sample-rate", value = "0.1"))
+public class TracingFilter implements Filter {
+
+  private double sampleRate;
+
+  @Override
+  public void init(FilterConfig config) {
+    sampleRate = Double.parseDouble(config.getInitParameter("sample-rate"));
+  }
+
+  @Override
+  public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+      throws IOException, ServletException {
+    boolean sampled = sampleRate > 0 && ThreadLocalRandom.current().nextDouble() < sampleRate;
+    long start = System.nanoTime();
+    if (sampled) {
+      Tracing.beginTrace();
+      response = new TimedResponse((HttpServletResponse) response);
+    }
+    try {
+      chain.doFilter(request, response);
+    } finally {
+      long[] phaseNanos = sampled ? Tracing.endTrace() : null;
+      RequestMetrics.getInstance().record(((HttpServletRequest) request).getServletPath(),
+          System.nanoTime() - start, phaseNanos);
+    }
+  }
+
+  @Override
+  public void destroy() {}
+
+  /** Response whose writer and output stream time their writes. */
+  private static final class TimedResponse extends HttpServletResponseWrapper {
+    private PrintWriter writer;
+    private ServletOutputStream outputStream;
+
+    private TimedResponse(HttpServletResponse response) {
+      super(response);
+    }
+
+    @Override
+    public PrintWriter getWriter() throws IOException {
+      if (writer == null) {
+        writer = new TimedWriter(super.getWriter());
+      }
+      return writer;
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() throws IOException {
+      if (outputStream == null) {
+        outputStream = new TimedOutputStream(super.getOutputStream());
+      }
+      return outputStream;
+    }
+  }
+
+  private static final class TimedWriter extends PrintWriter {
+    private final PrintWriter delegate;
+
+    private TimedWriter(PrintWriter delegate) {
+      super(delegate);
+      this.delegate = delegate;
+    }
+
+    @Override
+    public void write(int c) {
+      try (Tracing.Span span = Tracing.span(Tracing.Phase.WRITE)) {
+        delegate.write(c);
+      }
+    }
+
+    @Override
+    public void write(char[] buffer, int offset, int length) {
+      try (Tracing.Span span = Tracing.span(Tracing.Phase.WRITE)) {
+        delegate.write(buffer, offset, length);
+      }
+    }
+
+    @Override
+    public void write(String text, int offset, int length) {
+      try (Tracing.Span span = Tracing.span(Tracing.Phase.WRITE)) {
+        delegate.write(text, offset, length);
+      }
+    }
+
+    @Override
+    public void flush() {
+      try (Tracing.Span span = Tracing.span(Tracing.Phase.WRITE)) {
+        delegate.flush();
+      }
+    }
+
+    @Override
+    public void close() {
+      delegate.close();
+    }
+
+    @Override
+    public boolean checkError() {
+      return delegate.checkError();
+    }
+  }
+
+  private static final class TimedOutputStream extends ServletOutputStream {
+    private final ServletOutputStream delegate;
+
+    private TimedOutputStream(ServletOutputStream delegate) {
+      this.delegate = delegate;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      try (Tracing.Span span = Tracing.span(Tracing.Phase.WRITE)) {
+        delegate.write(b);
+      }
+    }
+
+    @Override
+    public void write(byte[] buffer, int offset, int length) throws IOException {
+      try (Tracing.Span span = Tracing.span(Tracing.Phase.WRITE)) {
+        delegate.write(buffer, offset, length);
+      }
+    }
+
+    @Override
+    public void flush() throws IOException {
+      try (Tracing.Span span = Tracing.span(Tracing.Phase.WRITE)) {
+        delegate.flush();
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      delegate.close();
+    }
+
+    @Override
+    public boolean isReady() {
+      return delegate.isReady();
+    }
+
+    @Override
+    public void setWriteListener(WriteListener listener) {
+      delegate.setWriteListener(listener);
+    }
+  }
+}
@@ -0,0 +1,101 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.appengine.api.datastore.Cursor;
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.Query.SortDirection;
+import com.google.appengine.api.datastore.QueryResultList;
+import com.google.gson.Gson;
+import com.google.sps.data.Comment;
+import com.google.sps.data.SharedServices;
+import com.google.sps.data.UserTimeline;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Servlet that returns a user's comments newest first, one page at a time, using the
+ * (user-id, timestamp desc) composite index.
+ */
+@WebServlet("/user-comments")
+public class UserCommentsServlet extends HttpServlet {
+
+  /** Number of comments per page when the request does not set a limit. */
+  private static final int DEFAULT_LIMIT = 20;
+
+  /** Largest page a request can ask for. */
+  private static final int MAX_LIMIT = 100;
+
+  private final Gson gson = SharedServices.getGson();
+  private final DatastoreService datastore = SharedServices.getDatastore();
+
+  @Override
+  public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    String userId = request.getParameter("user-id");
+    if (userId == null || userId.isEmpty()) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Expected a user-id");
+      return;
+    }
+    String limitParam = request.getParameter("limit");
+    int limit = DEFAULT_LIMIT;
+    if (limitParam != null) {
+      try {
+        limit = Integer.parseInt(limitParam);
+      } catch (NumberFormatException e) {
+        limit = 0;
+      }
+      if (limit <= 0) {
+        response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Expected a positive limit");
+        return;
+      }
+      limit = Math.min(limit, MAX_LIMIT);
+    }
+
+    FetchOptions fetchOptions = FetchOptions.Builder.withLimit(limit);
+    String cursorParam = request.getParameter("cursor");
+    if (cursorParam != null && !cursorParam.isEmpty()) {
+      try {
+        fetchOptions.startCursor(Cursor.fromWebSafeString(cursorParam));
+      } catch (IllegalArgumentException e) {
+        response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Malformed cursor");
+        return;
+      }
+    }
+
+    Query query = new Query("Comment")
+        .setFilter(new Query.FilterPredicate("user-id", Query.FilterOperator.EQUAL, userId))
+        .addSort("timestamp", SortDirection.DESCENDING);
+    QueryResultList<Entity> results = datastore.prepare(query).asQueryResultList(fetchOptions);
+
+    List<Comment> comments = new ArrayList<>();
+    for (Entity entity : results) {
+      comments.add(Comment.fromEntity(entity));
+    }
+    // a short page means there is nothing left to fetch
+    String nextCursor = comments.size() < limit ? null : results.getCursor().toWebSafeString();
+    long commentCount = UserTimeline.commentCounter(userId).getCount();
+
+    response.setContentType("application/json;");
+    response.getWriter().println(gson.toJson(new UserTimeline(comments, commentCount, nextCursor)));
+  }
+}
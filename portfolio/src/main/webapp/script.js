@@ -26,22 +26,31 @@ const TAB_CLASS = 'tab';
 /**The user entity containing the current user's id and nickname */
 var user;
 
-/**Retrieves the current user's information and sets up the page */
+/**
+ * Retrieves the current user's information, the comments, their authors and
+ * their markers in one request and sets up the page
+ */
 function setUp() {
-    fetch("/user-login")
+    fetch(`/bootstrap?vis=${getVis()}`)
       .then(response => response.json())
-      .then(currUser => user = currUser)
-      .then(userCustomization)
-      .then(setContent);
+      .then((page) => {
+        user = page.user;
+        userCustomization();
+        setContent(page);
+      });
 }
 
-/**Sets the page's event listeners and loads markers and comments */
-function setContent() {
+/**
+ * Sets the page's event listeners and displays the loaded markers and comments
+ * @param page the response from /bootstrap
+ */
+function setContent(page) {
     setTabEvents();
     setInfoEvents();
     setFormEvents();
     createMap();
-    getComments();
+    showComments(page);
+    listenForCommentChanges();
 }
 
 /** Removes or adds a class from an object's class list as required
@@ -185,36 +194,56 @@ function getContent(header) {
  * and displays them on the website
  */
 function getComments() {
-  fetch(`/list-comments?vis=${getVis()}`)
+  fetch(`/bootstrap?vis=${getVis()}`)
       .then(response => response.json())
-      .then((comments) => { 
-        handleGivenComments(comments);
-      });
+      .then(showComments);
 }
 
 /**
- * Parses the comment object from the server, retrieves the author's nickname
- * and then creates and displays the comment's elements and marker
+ * Displays the comments from /bootstrap in order, with their authors'
+ * nicknames and their markers
  */
-function handleGivenComments(comments) {
-  for (var i = 0; i < comments.length; i++) {
-    const comment = comments[i];
-    fetch(`/get-user?id=${comment.userId}`)
-      .then(response => response.json())
-      .then(author => addCommentToDom(author.nickname, comment))
-      .then(el => loadMarker(comment, el));
+function showComments(page) {
+  for (const comment of page.comments) {
+    const commentElement =
+        addCommentToDom(page.authors[comment.userId], comment);
+    const marker = page.markers[comment.markerId];
+    if (marker) {
+      makeMarker({lat: marker.lat, lng: marker.lng}, marker.visible,
+          commentElement, comment.markerId);
+    }
   }
 }
 
 /** Id of the element that contains all the visible comments*/
 const COMMENTS_DISPLAY = "commentsDisplay";
 
+/** The displayed comment objects and their elements, keyed by comment id */
+var displayedComments = {};
+
 /**
  * Adds the comment with author's nickname, location tag, and edit and delete
  * buttons when applicable to the DOM
+ * @param {boolean} prepend Whether to add the comment above the others
  */
-function addCommentToDom(author, comment) {
+function addCommentToDom(author, comment, prepend) {
   const commentDisplay = document.getElementById(COMMENTS_DISPLAY);
+  const commentElement = makeCommentElement(author, comment);
+
+  if (prepend) {
+    commentDisplay.prepend(commentElement);
+  } else {
+    commentDisplay.appendChild(commentElement);
+  }
+  displayedComments[comment.id] = {comment: comment, element: commentElement};
+  return commentElement;
+}
+
+/**
+ * @return comment element with author's nickname, location tag, and edit and
+ * delete buttons when applicable
+ */
+function makeCommentElement(author, comment) {
   const commentElement = document.createElement("div");
 
   /**Class name to style all comment blocks */
@@ -235,7 +264,6 @@ function addCommentToDom(author, comment) {
   addElement(makeCommentAuthorElement(author, userComment));
   addElement(makeCommentTextElement(comment.commentText));
 
-  commentDisplay.appendChild(commentElement);
   return commentElement;
 }
 
@@ -309,7 +337,9 @@ function makeEditButton(author, comment, commentElement) {
   button.addEventListener('click', () => {
     setEditingState(comment, commentElement);
     makeTempMarker(getMarker(comment.markerId).getPosition());
-    deleteMarker(comment.markerId);
+    // the old marker entity is only deleted once the edit is saved, since
+    // deleting a marker also deletes the comments tagged to it
+    getMarker(comment.markerId).setMap(null);
     setFormContent(author, comment.commentText);
   });
 
@@ -355,6 +385,7 @@ function setFormContent(author, commentText) {
  */
 function deleteCommentElements(comment, commentElement) {
   commentElement.remove();
+  delete displayedComments[comment.id];
   const marker = getMarker(comment.markerId);
   marker.setMap(null);
   deleteMarker(comment.markerId);
@@ -439,6 +470,7 @@ function updateComments() {
 
   //post the marker to the servlet and get it's id to upload with the comment
   fetch('/markers', {method:'POST', body: params})
+    .then(checkRateLimit)
     .then(response => response.text())
     .then((idText) => {
       const markerId = parseInt(idText);
@@ -463,9 +495,12 @@ function editComment(markerId, commentText, commentAuthor) {
   params.append('comment-text', commentText);
   params.append('marker-id', markerId);
   params.append('id', editedComment.id);
+  params.append('prev-marker-id', editedComment.markerId);
+  const oldMarkerId = editedComment.markerId;
   editedComment = null;
 
-  postCommentToServlet('/edit-comment', params, commentAuthor);
+  postCommentToServlet('/edit-comment', params, commentAuthor)
+    .then(() => deleteMarkerEntity(oldMarkerId));
 }
 
 /**
@@ -474,7 +509,6 @@ function editComment(markerId, commentText, commentAuthor) {
 function uploadNewComment(markerId, commentText, commentAuthor) {
   const params = new URLSearchParams();
   params.append('comment-text', commentText);
-  params.append('user-id', user.id);
   params.append('marker-id', markerId);
 
   postCommentToServlet('/new-comment', params, commentAuthor);
@@ -483,17 +517,35 @@ function uploadNewComment(markerId, commentText, commentAuthor) {
 /**
  * Posts the given comment information to the given servlet,
  * and updates the user's nickname appropriately
+ * @return Promise from posting the comment
  */
 function postCommentToServlet(servlet, params, commentAuthor) {
-    fetch(servlet, {method: 'POST', body: params})
+    return fetch(servlet, {method: 'POST', body: params})
+    .then(checkRateLimit)
     .then(() => {
       if (user.nickname != commentAuthor) {
         updateNickname(commentAuthor);
       }
-      refreshComments();
+      // the comment stream delivers the change when it is connected
+      if (!isStreamOpen()) {
+        refreshComments();
+      }
     });
 }
 
+/**
+ * Tells the user to slow down when the server rejected a write for coming too
+ * soon after their others
+ * @return the response, or a rejected Promise if the write was rejected
+ */
+function checkRateLimit(response) {
+  if (response.status == 429) {
+    alert("You're posting too quickly. Please wait a moment and try again.");
+    return Promise.reject(new Error('Rate limited'));
+  }
+  return response;
+}
+
 /**
  * Clears all displayed comments and redownloads the updated versions
  */
@@ -538,6 +590,7 @@ function clearComments() {
     commentDisplay.removeChild(child);
     child = commentDisplay.lastElementChild;
   }
+  displayedComments = {};
 }
 
 /**
@@ -558,21 +611,136 @@ function clearMarkers() {
 function deleteComment (comment) {
   const params = new URLSearchParams();
   params.append('id', comment.id);
+  params.append('marker-id', comment.markerId);
   fetch('/delete-comment', {method: 'POST', body:params})
-        .then(refreshComments);
+        .then(() => {
+          if (!isStreamOpen()) {
+            refreshComments();
+          }
+        });
 }
 
 /**
- * Deletes the given comment from the page and server
- * @return Promise from deleting the marker entity from /delete-marker
+ * Deletes the given marker from the page and server
  */
 function deleteMarker (markerId) {
   const marker = getMarker(markerId);
   marker.setMap(null);
+  deleteMarkerEntity(markerId);
+}
 
+/**
+ * Deletes the marker entity and every comment tagged to it from the server
+ * @return Promise from deleting the marker entity from /delete-marker
+ */
+function deleteMarkerEntity (markerId) {
   const params = new URLSearchParams();
   params.append('id', markerId);
-  fetch('/delete-marker', {method: 'POST', body:params});
+  return fetch('/delete-marker', {method: 'POST', body:params});
+}
+
+//~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+// COMMENT STREAM FUNCTIONS
+
+/** Server-sent event stream of comment changes, or null if unsupported */
+var commentStream = null;
+
+/**
+ * Opens the comment stream so comments posted, edited or deleted anywhere
+ * show up without reloading the whole list
+ */
+function listenForCommentChanges() {
+  if (!window.EventSource) return;
+
+  commentStream = new EventSource('/comments/stream');
+  commentStream.addEventListener('new', (e) => {
+    handleNewComment(JSON.parse(e.data).comment);
+  });
+  commentStream.addEventListener('edit', (e) => {
+    const change = JSON.parse(e.data);
+    handleEditedComment(change.markerId, change.comment);
+  });
+  commentStream.addEventListener('delete', (e) => {
+    removeDisplayedComment(JSON.parse(e.data).id);
+  });
+  // the server dropped changes we were too slow to receive
+  commentStream.addEventListener('reset', refreshComments);
+}
+
+/**
+ * @return whether comment changes are currently being pushed by the server
+ */
+function isStreamOpen() {
+  return !!commentStream && commentStream.readyState === EventSource.OPEN;
+}
+
+/**
+ * Adds a new comment above the others and removes the oldest comments
+ * beyond the number the client asked to see
+ */
+function handleNewComment(comment) {
+  if (displayedComments[comment.id]) return;
+
+  fetch(`/get-user?id=${comment.userId}`)
+    .then(response => response.json())
+    .then(author => addCommentToDom(author.nickname, comment, /*prepend=*/true))
+    .then((el) => {
+      loadMarker(comment, el);
+      removeOldestComments(getVis());
+    });
+}
+
+/**
+ * Replaces a displayed comment and its marker with their edited versions
+ * @param {long} prevMarkerId The id of the marker before the edit
+ */
+function handleEditedComment(prevMarkerId, comment) {
+  const displayed = displayedComments[comment.id];
+  if (!displayed) return;
+
+  removeMarker(prevMarkerId);
+  fetch(`/get-user?id=${comment.userId}`)
+    .then(response => response.json())
+    .then((author) => {
+      const commentElement = makeCommentElement(author.nickname, comment);
+      displayed.element.replaceWith(commentElement);
+      displayedComments[comment.id] = {comment: comment, element: commentElement};
+      loadMarker(comment, commentElement);
+    });
+}
+
+/**
+ * Removes the comment with the given id and its marker from the page
+ */
+function removeDisplayedComment(commentId) {
+  const displayed = displayedComments[commentId];
+  if (!displayed) return;
+
+  displayed.element.remove();
+  removeMarker(displayed.comment.markerId);
+  delete displayedComments[commentId];
+}
+
+/**
+ * Removes the oldest displayed comments until at most maxComments are left
+ */
+function removeOldestComments(maxComments) {
+  const comments = Object.values(displayedComments).map(d => d.comment);
+  comments.sort((a, b) => b.timestamp - a.timestamp);
+  for (const comment of comments.slice(maxComments)) {
+    removeDisplayedComment(comment.id);
+  }
+}
+
+/**
+ * Removes the marker with the given id from the map, if it is displayed
+ */
+function removeMarker(markerId) {
+  const marker = getMarker(markerId);
+  if (marker) {
+    marker.setMap(null);
+    delete permMarkers[`${markerId}`];
+  }
 }
 
 //~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
@@ -0,0 +1,102 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Checks that /bootstrap returns the user, comments, authors and markers together. */
+@RunWith(JUnit4.class)
+public final class BootstrapTest {
+
+  private final LocalPortfolioServer server = new LocalPortfolioServer();
+
+  @Before
+  public void setUp() throws Exception {
+    server.start();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    server.stop();
+  }
+
+  @Test
+  public void returnsEverythingThePageLoads() throws IOException {
+    post("/user-login", "id=" + LocalPortfolioServer.USER_ID + "&nickname=Ann");
+    String markerId = post("/markers", "lat=43.6&lng=-79.4&visible=true").trim();
+    post("/new-comment", "comment-text=hello&marker-id=" + markerId);
+
+    JsonObject page = JsonParser.parseString(get("/bootstrap?vis=10")).getAsJsonObject();
+
+    JsonObject user = page.getAsJsonObject("user");
+    Assert.assertTrue(user.get("loggedIn").getAsBoolean());
+    Assert.assertEquals(LocalPortfolioServer.USER_ID, user.get("id").getAsString());
+    Assert.assertEquals("Ann", user.get("nickname").getAsString());
+
+    JsonObject comment = page.getAsJsonArray("comments").get(0).getAsJsonObject();
+    Assert.assertEquals("hello", comment.get("commentText").getAsString());
+    Assert.assertEquals("Ann",
+        page.getAsJsonObject("authors").get(LocalPortfolioServer.USER_ID).getAsString());
+    JsonObject marker = page.getAsJsonObject("markers").getAsJsonObject(markerId);
+    Assert.assertEquals(43.6, marker.get("lat").getAsDouble(), 0);
+    Assert.assertTrue(marker.get("visible").getAsBoolean());
+  }
+
+  private HttpURLConnection open(String path) throws IOException {
+    return (HttpURLConnection) new URL(server.getBaseUrl() + path).openConnection();
+  }
+
+  private String get(String path) throws IOException {
+    HttpURLConnection connection = open(path);
+    Assert.assertEquals(200, connection.getResponseCode());
+    return read(connection);
+  }
+
+  private String post(String path, String form) throws IOException {
+    HttpURLConnection connection = open(path);
+    connection.setRequestMethod("POST");
+    connection.setDoOutput(true);
+    try (OutputStream out = connection.getOutputStream()) {
+      out.write(form.getBytes(StandardCharsets.UTF_8));
+    }
+    Assert.assertEquals(200, connection.getResponseCode());
+    return read(connection);
+  }
+
+  private static String read(HttpURLConnection connection) throws IOException {
+    ByteArrayOutputStream body = new ByteArrayOutputStream();
+    try (InputStream in = connection.getInputStream()) {
+      byte[] buffer = new byte[8192];
+      for (int read; (read = in.read(buffer)) != -1; ) {
+        body.write(buffer, 0, read);
+      }
+    }
+    return new String(body.toByteArray(), StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,98 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Checks that /comments/stream works through the filters and pushes new comments. */
+@RunWith(JUnit4.class)
+public final class CommentStreamTest {
+
+  /** Traces every request, so the stream also goes through the tracing response wrapper. */
+  private final LocalPortfolioServer server = new LocalPortfolioServer()
+      .setFilterInitParameter("sample-rate", "1");
+
+  @Before
+  public void setUp() throws Exception {
+    server.start();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    server.stop();
+  }
+
+  @Test
+  public void pushesNewComments() throws IOException {
+    HttpURLConnection stream = open("/comments/stream");
+    stream.setReadTimeout(10000);
+    Assert.assertEquals(200, stream.getResponseCode());
+    Assert.assertTrue(stream.getContentType().startsWith("text/event-stream"));
+
+    try (BufferedReader events = new BufferedReader(
+        new InputStreamReader(stream.getInputStream(), StandardCharsets.UTF_8))) {
+      Assert.assertEquals("retry: 3000", events.readLine());
+
+      String markerId = post("/markers", "lat=43.6&lng=-79.4&visible=true").trim();
+      post("/new-comment", "comment-text=hello&marker-id=" + markerId);
+
+      String line;
+      do {
+        line = events.readLine();
+        Assert.assertNotNull("Stream ended before the comment arrived", line);
+      } while (!line.startsWith("event: "));
+      Assert.assertEquals("event: new", line);
+      String data = events.readLine();
+      Assert.assertTrue(data, data.startsWith("data: ") && data.contains("\"hello\""));
+    } finally {
+      stream.disconnect();
+    }
+  }
+
+  private HttpURLConnection open(String path) throws IOException {
+    return (HttpURLConnection) new URL(server.getBaseUrl() + path).openConnection();
+  }
+
+  private String post(String path, String form) throws IOException {
+    HttpURLConnection connection = open(path);
+    connection.setRequestMethod("POST");
+    connection.setDoOutput(true);
+    connection.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
+    try (OutputStream out = connection.getOutputStream()) {
+      out.write(form.getBytes(StandardCharsets.UTF_8));
+    }
+    Assert.assertEquals(200, connection.getResponseCode());
+    try (BufferedReader in = new BufferedReader(
+        new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8))) {
+      StringBuilder body = new StringBuilder();
+      for (String line; (line = in.readLine()) != null; ) {
+        body.append(line).append('\n');
+      }
+      return body.toString();
+    }
+  }
+}
@@ -0,0 +1,188 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.appengine.tools.development.testing.LocalUserServiceTestConfig;
+import com.google.apphosting.api.ApiProxy;
+import java.io.File;
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.servlet.DispatcherType;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.annotation.WebFilter;
+import javax.servlet.annotation.WebInitParam;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.servlet.FilterHolder;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+
+/**
+ * Runs every servlet and filter in com.google.sps.servlets in an embedded Jetty server,
+ * backed by the in-memory Datastore and user service from the App Engine SDK, so the
+ * portfolio can be exercised without App Engine.
+ */
+public final class LocalPortfolioServer {
+
+  /** The user every request is made as. */
+  public static final String USER_ID = "test-user";
+
+  private static final String SERVLETS_PACKAGE = "com.google.sps.servlets";
+
+  private final LocalServiceTestHelper helper = new LocalServiceTestHelper(
+      // strongly consistent, in-memory Datastore that supports cross-group transactions
+      new LocalDatastoreServiceTestConfig().setApplyAllHighRepJobPolicy(),
+      new LocalUserServiceTestConfig())
+      .setEnvIsLoggedIn(true)
+      .setEnvEmail("test@example.com")
+      .setEnvAuthDomain("example.com")
+      .setEnvAttributes(userIdAttributes());
+
+  /** Filter init parameters that replace the ones in the @WebFilter annotations. */
+  private final Map<String, String> filterParameters = new HashMap<>();
+
+  private Server server;
+
+  /** Overrides an init parameter of every filter that has it, e.g. a rate limit. */
+  public LocalPortfolioServer setFilterInitParameter(String name, String value) {
+    filterParameters.put(name, value);
+    return this;
+  }
+
+  /** Starts the server on a free port. */
+  public void start() throws Exception {
+    helper.setUp();
+    ApiProxy.Environment environment = ApiProxy.getCurrentEnvironment();
+
+    ServletContextHandler context = new ServletContextHandler();
+    context.setContextPath("/");
+    // App Engine APIs look up their environment per thread, so give it to Jetty's threads.
+    context.addFilter(new FilterHolder(new EnvironmentFilter(environment)), "/*",
+        EnumSet.of(DispatcherType.REQUEST, DispatcherType.ASYNC));
+    for (Class<? extends Filter> filterClass : findAnnotated(WebFilter.class, Filter.class)) {
+      WebFilter annotation = filterClass.getAnnotation(WebFilter.class);
+      FilterHolder holder = new FilterHolder(filterClass);
+      // as a container would, rather than the async support embedded holders default to
+      holder.setAsyncSupported(annotation.asyncSupported());
+      for (WebInitParam parameter : annotation.initParams()) {
+        holder.setInitParameter(parameter.name(),
+            filterParameters.getOrDefault(parameter.name(), parameter.value()));
+      }
+      for (String path : annotation.value()) {
+        context.addFilter(holder, path, EnumSet.of(DispatcherType.REQUEST));
+      }
+      for (String path : annotation.urlPatterns()) {
+        context.addFilter(holder, path, EnumSet.of(DispatcherType.REQUEST));
+      }
+    }
+    for (Class<? extends HttpServlet> servletClass
+        : findAnnotated(WebServlet.class, HttpServlet.class)) {
+      WebServlet annotation = servletClass.getAnnotation(WebServlet.class);
+      ServletHolder holder = new ServletHolder(servletClass);
+      holder.setAsyncSupported(annotation.asyncSupported());
+      for (String path : annotation.value()) {
+        context.addServlet(holder, path);
+      }
+      for (String path : annotation.urlPatterns()) {
+        context.addServlet(holder, path);
+      }
+    }
+
+    server = new Server(0);
+    server.setHandler(context);
+    server.start();
+  }
+
+  public void stop() throws Exception {
+    server.stop();
+    helper.tearDown();
+  }
+
+  /** @return the URL of the server root, without a trailing slash */
+  public String getBaseUrl() {
+    int port = ((ServerConnector) server.getConnectors()[0]).getLocalPort();
+    return "http://localhost:" + port;
+  }
+
+  private static Map<String, Object> userIdAttributes() {
+    Map<String, Object> attributes = new HashMap<>();
+    attributes.put("com.google.appengine.api.users.UserService.user_id_key", USER_ID);
+    return attributes;
+  }
+
+  /** @return every subclass of type annotated with the annotation in the servlets package */
+  @SuppressWarnings("unchecked")
+  private static <T> List<Class<? extends T>> findAnnotated(
+      Class<? extends Annotation> annotation, Class<T> type)
+      throws URISyntaxException, ClassNotFoundException {
+    URL packageUrl = LocalPortfolioServer.class.getClassLoader()
+        .getResource(SERVLETS_PACKAGE.replace('.', '/'));
+    List<Class<? extends T>> classes = new ArrayList<>();
+    for (File file : new File(packageUrl.toURI()).listFiles()) {
+      String fileName = file.getName();
+      if (!fileName.endsWith(".class") || fileName.contains("$")) {
+        continue;
+      }
+      Class<?> foundClass = Class.forName(
+          SERVLETS_PACKAGE + "." + fileName.substring(0, fileName.length() - ".class".length()));
+      if (foundClass.isAnnotationPresent(annotation) && type.isAssignableFrom(foundClass)) {
+        classes.add((Class<? extends T>) foundClass);
+      }
+    }
+    return classes;
+  }
+
+  /** Makes the App Engine environment available to the thread handling each request. */
+  private static final class EnvironmentFilter implements Filter {
+    private final ApiProxy.Environment environment;
+
+    private EnvironmentFilter(ApiProxy.Environment environment) {
+      this.environment = environment;
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+        throws IOException, ServletException {
+      ApiProxy.setEnvironmentForCurrentThread(environment);
+      try {
+        chain.doFilter(request, response);
+      } finally {
+        ApiProxy.clearEnvironmentForCurrentThread();
+      }
+    }
+
+    @Override
+    public void init(FilterConfig filterConfig) {}
+
+    @Override
+    public void destroy() {}
+  }
+}
@@ -0,0 +1,294 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Load-test harness for the portfolio servlets. Runs a mix of reads and writes similar to
+ * the page's against a LocalPortfolioServer and prints throughput and latency percentiles
+ * per endpoint.
+ *
+ * <p>The defaults make a quick smoke test. For a real measurement, run e.g.
+ * {@code mvn test -Dtest=PortfolioLoadTest -Dload.threads=16 -Dload.seconds=60}.
+ */
+@RunWith(JUnit4.class)
+public final class PortfolioLoadTest {
+
+  private static final int THREADS = Integer.getInteger("load.threads", 4);
+  private static final int SECONDS = Integer.getInteger("load.seconds", 2);
+  private static final int SEED_COMMENTS = Integer.getInteger("load.seed", 50);
+
+  /** Coordinates the page centers the map on; all generated markers are near it. */
+  private static final double CENTER_LAT = 43.65;
+  private static final double CENTER_LNG = -79.38;
+
+  /** Matches the sum and count samples of the per-phase histograms on /metrics. */
+  private static final Pattern PHASE_SAMPLE = Pattern.compile(
+      "http_request_phase_seconds_(sum|count)\\{endpoint=\"([^\"]*)\",phase=\"(\\w+)\"\\} (\\S+)");
+
+  private static final String[] WORDS = {
+      "coffee", "toronto", "great", "view", "park", "lake", "museum", "food", "walk", "music"};
+
+  /** The load comes from one user and IP address, so it would be throttled otherwise. */
+  private final LocalPortfolioServer server = new LocalPortfolioServer()
+      .setFilterInitParameter("user-burst", "1000000")
+      .setFilterInitParameter("user-per-minute", "1000000")
+      .setFilterInitParameter("ip-burst", "1000000")
+      .setFilterInitParameter("ip-per-minute", "1000000")
+      .setFilterInitParameter("sample-rate", "1");
+  private final Map<String, LatencyRecorder> recorders = new ConcurrentHashMap<>();
+  private final List<Long> markerIds = new CopyOnWriteArrayList<>();
+
+  @Before
+  public void setUp() throws Exception {
+    server.start();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    server.stop();
+  }
+
+  @Test
+  public void mixedWorkload() throws Exception {
+    for (int i = 0; i < SEED_COMMENTS; i++) {
+      postComment();
+    }
+    recorders.clear();
+
+    long deadline = System.nanoTime() + SECONDS * 1_000_000_000L;
+    List<Thread> workers = new ArrayList<>();
+    List<Throwable> failures = new CopyOnWriteArrayList<>();
+    for (int i = 0; i < THREADS; i++) {
+      Thread worker = new Thread(() -> {
+        try {
+          while (System.nanoTime() < deadline) {
+            runRandomOperation();
+          }
+        } catch (Throwable t) {
+          failures.add(t);
+        }
+      });
+      workers.add(worker);
+      worker.start();
+    }
+    for (Thread worker : workers) {
+      worker.join();
+    }
+
+    printReport();
+    printPhases(get("/metrics", "/metrics"));
+    Assert.assertEquals("Worker failures: " + failures, 0, failures.size());
+    for (Map.Entry<String, LatencyRecorder> recorder : recorders.entrySet()) {
+      Assert.assertEquals(
+          "Failed requests to " + recorder.getKey(), 0, recorder.getValue().getErrors());
+    }
+  }
+
+  /** Picks one operation, weighted roughly like the requests a page view makes. */
+  private void runRandomOperation() throws IOException {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    int roll = random.nextInt(100);
+    if (roll < 10) {
+      get("/bootstrap", "/bootstrap?vis=10");
+    } else if (roll < 40) {
+      get("/list-comments", "/list-comments?vis=10");
+    } else if (roll < 55) {
+      long markerId = markerIds.get(random.nextInt(markerIds.size()));
+      get("/markers", "/markers?id=" + markerId);
+    } else if (roll < 65) {
+      get("/get-user", "/get-user?id=" + LocalPortfolioServer.USER_ID);
+    } else if (roll < 70) {
+      get("/user-login", "/user-login");
+    } else if (roll < 75) {
+      int zoom = 8;
+      long x = (long) Math.floor((CENTER_LNG + 180) / 360 * (1 << zoom));
+      double sinLat = Math.sin(Math.toRadians(CENTER_LAT));
+      long y = (long) Math.floor(
+          (0.5 - Math.log((1 + sinLat) / (1 - sinLat)) / (4 * Math.PI)) * (1 << zoom));
+      get("/marker-tiles", "/marker-tiles?z=" + zoom + "&x=" + x + "&y=" + y);
+    } else if (roll < 80) {
+      get("/search-comments", "/search-comments?q=" + WORDS[random.nextInt(WORDS.length)]);
+    } else if (roll < 85) {
+      get("/stats", "/stats");
+    } else {
+      postComment();
+    }
+  }
+
+  /** Creates a marker and a comment tagged to it, the way the page's form does. */
+  private void postComment() throws IOException {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    double lat = CENTER_LAT + random.nextDouble(-0.5, 0.5);
+    double lng = CENTER_LNG + random.nextDouble(-0.5, 0.5);
+    String markerId = post("/markers",
+        "lat=" + lat + "&lng=" + lng + "&visible=true").trim();
+    markerIds.add(Long.parseLong(markerId));
+
+    String text = WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)];
+    post("/new-comment",
+        "comment-text=" + URLEncoder.encode(text, "UTF-8") + "&marker-id=" + markerId);
+  }
+
+  private String get(String endpoint, String path) throws IOException {
+    HttpURLConnection connection = open(path);
+    connection.setRequestProperty("Accept-Encoding", "gzip");
+    return send(endpoint, connection, null);
+  }
+
+  private String post(String endpoint, String form) throws IOException {
+    HttpURLConnection connection = open(endpoint);
+    connection.setRequestMethod("POST");
+    connection.setDoOutput(true);
+    connection.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
+    return send(endpoint, connection, form.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private HttpURLConnection open(String path) throws IOException {
+    return (HttpURLConnection) new URL(server.getBaseUrl() + path).openConnection();
+  }
+
+  /** Sends the request, reads the whole response, and records how long it took. */
+  private String send(String endpoint, HttpURLConnection connection, byte[] body)
+      throws IOException {
+    long start = System.nanoTime();
+    if (body != null) {
+      try (OutputStream out = connection.getOutputStream()) {
+        out.write(body);
+      }
+    }
+    int status = connection.getResponseCode();
+    InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+    ByteArrayOutputStream response = new ByteArrayOutputStream();
+    if (in != null) {
+      try (InputStream stream = in) {
+        byte[] buffer = new byte[8192];
+        for (int read; (read = stream.read(buffer)) != -1; ) {
+          response.write(buffer, 0, read);
+        }
+      }
+    }
+    long elapsed = System.nanoTime() - start;
+
+    recorders.computeIfAbsent(endpoint, key -> new LatencyRecorder())
+        .record(elapsed, status >= 400);
+    return new String(response.toByteArray(), StandardCharsets.UTF_8);
+  }
+
+  private void printReport() {
+    System.out.println();
+    System.out.println(String.format("Load test: %d threads for %d s", THREADS, SECONDS));
+    System.out.println(String.format("%-18s %8s %7s %9s %8s %8s %8s %8s",
+        "endpoint", "requests", "errors", "req/s", "p50 ms", "p90 ms", "p99 ms", "max ms"));
+    for (Map.Entry<String, LatencyRecorder> entry : new TreeMap<>(recorders).entrySet()) {
+      LatencyRecorder recorder = entry.getValue();
+      System.out.println(String.format("%-18s %8d %7d %9.1f %8.2f %8.2f %8.2f %8.2f",
+          entry.getKey(), recorder.getCount(), recorder.getErrors(),
+          (double) recorder.getCount() / SECONDS,
+          recorder.percentile(50), recorder.percentile(90), recorder.percentile(99),
+          recorder.percentile(100)));
+    }
+  }
+
+  /** Prints the mean time requests to each endpoint spent in each traced phase. */
+  private static void printPhases(String metrics) {
+    Map<String, Map<String, Double>> sums = new TreeMap<>();
+    Map<String, Double> counts = new TreeMap<>();
+    Matcher matcher = PHASE_SAMPLE.matcher(metrics);
+    while (matcher.find()) {
+      double value = Double.parseDouble(matcher.group(4));
+      if (matcher.group(1).equals("sum")) {
+        sums.computeIfAbsent(matcher.group(2), key -> new TreeMap<>())
+            .put(matcher.group(3), value);
+      } else {
+        counts.put(matcher.group(2), value);
+      }
+    }
+
+    System.out.println();
+    System.out.println(String.format("%-18s %12s %12s %12s",
+        "endpoint", "datastore ms", "serialize ms", "write ms"));
+    for (Map.Entry<String, Map<String, Double>> entry : sums.entrySet()) {
+      double count = counts.get(entry.getKey());
+      if (count == 0) {
+        continue;
+      }
+      Map<String, Double> phases = entry.getValue();
+      System.out.println(String.format("%-18s %12.3f %12.3f %12.3f", entry.getKey(),
+          phases.get("datastore") / count * 1000, phases.get("serialize") / count * 1000,
+          phases.get("write") / count * 1000));
+    }
+  }
+
+  /** Latencies of every request made to one endpoint. */
+  private static final class LatencyRecorder {
+    private long[] latencies = new long[1024];
+    private int count = 0;
+    private int errors = 0;
+
+    private synchronized void record(long nanos, boolean error) {
+      if (count == latencies.length) {
+        latencies = Arrays.copyOf(latencies, count * 2);
+      }
+      latencies[count++] = nanos;
+      if (error) {
+        errors++;
+      }
+    }
+
+    private synchronized int getCount() {
+      return count;
+    }
+
+    private synchronized int getErrors() {
+      return errors;
+    }
+
+    /** @return the latency in milliseconds that the given percent of requests were under */
+    private synchronized double percentile(double percent) {
+      if (count == 0) {
+        return 0;
+      }
+      long[] sorted = Arrays.copyOf(latencies, count);
+      Arrays.sort(sorted);
+      int index = (int) Math.ceil(percent / 100 * count) - 1;
+      return sorted[Math.max(0, index)] / 1_000_000.0;
+    }
+  }
+}
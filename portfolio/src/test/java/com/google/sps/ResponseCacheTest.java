@@ -0,0 +1,110 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Checks the ETags, 304s and invalidation of cached marker and user responses. */
+@RunWith(JUnit4.class)
+public final class ResponseCacheTest {
+
+  private final LocalPortfolioServer server = new LocalPortfolioServer();
+
+  @Before
+  public void setUp() throws Exception {
+    server.start();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    server.stop();
+  }
+
+  @Test
+  public void markerIsServedWithETagAndRevalidated() throws IOException {
+    String markerId = post("/markers", "lat=43.6&lng=-79.4&visible=true").trim();
+
+    HttpURLConnection first = open("/markers?id=" + markerId);
+    Assert.assertEquals(200, first.getResponseCode());
+    String etag = first.getHeaderField("ETag");
+    Assert.assertNotNull(etag);
+    Assert.assertEquals("public, no-cache", first.getHeaderField("Cache-Control"));
+    String body = read(first);
+    Assert.assertTrue(body.contains("\"id\":" + markerId));
+
+    // the second response comes from the cache
+    HttpURLConnection second = open("/markers?id=" + markerId);
+    Assert.assertEquals(etag, second.getHeaderField("ETag"));
+    Assert.assertEquals(body, read(second));
+
+    HttpURLConnection revalidated = open("/markers?id=" + markerId);
+    revalidated.setRequestProperty("If-None-Match", etag);
+    Assert.assertEquals(304, revalidated.getResponseCode());
+  }
+
+  @Test
+  public void nicknameChangeInvalidatesUser() throws IOException {
+    String path = "/get-user?id=" + LocalPortfolioServer.USER_ID;
+    HttpURLConnection before = open(path);
+    String etag = before.getHeaderField("ETag");
+    Assert.assertTrue(read(before).contains("New User"));
+
+    post("/user-login", "id=" + LocalPortfolioServer.USER_ID + "&nickname=Ann");
+
+    HttpURLConnection after = open(path);
+    after.setRequestProperty("If-None-Match", etag);
+    Assert.assertEquals(200, after.getResponseCode());
+    Assert.assertNotEquals(etag, after.getHeaderField("ETag"));
+    Assert.assertTrue(read(after).contains("\"nickname\":\"Ann\""));
+  }
+
+  private HttpURLConnection open(String path) throws IOException {
+    return (HttpURLConnection) new URL(server.getBaseUrl() + path).openConnection();
+  }
+
+  private String post(String path, String form) throws IOException {
+    HttpURLConnection connection = open(path);
+    connection.setRequestMethod("POST");
+    connection.setDoOutput(true);
+    try (OutputStream out = connection.getOutputStream()) {
+      out.write(form.getBytes(StandardCharsets.UTF_8));
+    }
+    Assert.assertEquals(200, connection.getResponseCode());
+    return read(connection);
+  }
+
+  private static String read(HttpURLConnection connection) throws IOException {
+    ByteArrayOutputStream body = new ByteArrayOutputStream();
+    try (InputStream in = connection.getInputStream()) {
+      byte[] buffer = new byte[8192];
+      for (int read; (read = in.read(buffer)) != -1; ) {
+        body.write(buffer, 0, read);
+      }
+    }
+    return new String(body.toByteArray(), StandardCharsets.UTF_8);
+  }
+}
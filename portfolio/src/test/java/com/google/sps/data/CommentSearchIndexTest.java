@@ -0,0 +1,114 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Checks how the search index matches and ranks comments. The index is shared by the whole
+ * JVM, so each test uses words and ids no other test does.
+ */
+@RunWith(JUnit4.class)
+public final class CommentSearchIndexTest {
+
+  private final LocalServiceTestHelper helper = new LocalServiceTestHelper(
+      new LocalDatastoreServiceTestConfig().setApplyAllHighRepJobPolicy());
+
+  private CommentSearchIndex index;
+
+  @Before
+  public void setUp() {
+    helper.setUp();
+    index = CommentSearchIndex.getInstance();
+  }
+
+  @After
+  public void tearDown() {
+    helper.tearDown();
+  }
+
+  @Test
+  public void matchesTheStartOfWordsIgnoringCase() {
+    index.put(comment(1001, "Sunset over the Harbourfront", 10));
+    index.put(comment(1002, "harbour lights at night", 20));
+    index.put(comment(1003, "no match: arbour", 30));
+
+    Assert.assertEquals(Arrays.asList(1002L, 1001L), ids(index.search("HARBOUR", 10)));
+  }
+
+  @Test
+  public void requiresEveryWordOfTheQuery() {
+    index.put(comment(2001, "quokka selfie on the beach", 10));
+    index.put(comment(2002, "quokka in the bushes", 20));
+
+    Assert.assertEquals(Arrays.asList(2001L), ids(index.search("beach quokka", 10)));
+    Assert.assertEquals(new ArrayList<Long>(), ids(index.search("quokka zeppelin", 10)));
+  }
+
+  @Test
+  public void ranksExactAndRepeatedMatchesFirstThenNewest() {
+    index.put(comment(3001, "platypuses", 40));
+    index.put(comment(3002, "platypus", 10));
+    index.put(comment(3003, "platypus platypus", 20));
+    index.put(comment(3004, "a platypus", 30));
+
+    Assert.assertEquals(Arrays.asList(3003L, 3004L, 3002L, 3001L),
+        ids(index.search("platypus", 10)));
+    Assert.assertEquals(Arrays.asList(3003L, 3004L), ids(index.search("platypus", 2)));
+  }
+
+  @Test
+  public void replacedAndRemovedCommentsStopMatching() {
+    index.put(comment(4001, "wombat burrow", 10));
+    index.put(comment(4001, "echidna burrow", 20));
+    index.put(comment(4002, "wombat crossing", 30));
+
+    Assert.assertEquals(Arrays.asList(4002L), ids(index.search("wombat", 10)));
+    Assert.assertEquals(Arrays.asList(4001L), ids(index.search("echidna", 10)));
+
+    index.remove(4001);
+    Assert.assertEquals(new ArrayList<Long>(), ids(index.search("echidna", 10)));
+    Assert.assertEquals(new ArrayList<Long>(), ids(index.search("burrow", 10)));
+  }
+
+  @Test
+  public void queryWithoutWordsMatchesNothing() {
+    index.put(comment(5001, "kookaburra", 10));
+
+    Assert.assertTrue(index.search(" ?! ", 10).isEmpty());
+  }
+
+  private static Comment comment(long id, String text, long timestamp) {
+    return new Comment(id, text, /*markerId=*/ 1, "search-user", timestamp);
+  }
+
+  private static List<Long> ids(List<Comment> comments) {
+    List<Long> ids = new ArrayList<>();
+    for (Comment comment : comments) {
+      ids.add(comment.getId());
+    }
+    return ids;
+  }
+}
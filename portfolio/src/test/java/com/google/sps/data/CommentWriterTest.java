@@ -0,0 +1,126 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import com.google.appengine.api.datastore.DatastoreFailureException;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.apphosting.api.ApiProxy;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Checks that coalesced comment writes store every comment and count it exactly once. */
+@RunWith(JUnit4.class)
+public final class CommentWriterTest {
+
+  private static final int WRITERS = 32;
+
+  private final LocalServiceTestHelper helper = new LocalServiceTestHelper(
+      new LocalDatastoreServiceTestConfig().setApplyAllHighRepJobPolicy());
+
+  @Before
+  public void setUp() {
+    helper.setUp();
+  }
+
+  @After
+  public void tearDown() {
+    helper.tearDown();
+  }
+
+  @Test
+  public void concurrentWritesAreStoredAndCounted() throws Exception {
+    ApiProxy.Environment environment = ApiProxy.getCurrentEnvironment();
+    ExecutorService executor = Executors.newFixedThreadPool(WRITERS);
+    CountDownLatch start = new CountDownLatch(1);
+    List<Future<Key>> keys = new ArrayList<>();
+    try {
+      for (int i = 0; i < WRITERS; i++) {
+        Entity comment = newComment(/*markerId=*/ 100 + i % 4, "writer-user-" + i % 2);
+        Callable<Key> write = () -> {
+          // App Engine APIs look up their environment per thread
+          ApiProxy.setEnvironmentForCurrentThread(environment);
+          try {
+            start.await();
+            return CommentWriter.getInstance().put(comment);
+          } finally {
+            ApiProxy.clearEnvironmentForCurrentThread();
+          }
+        };
+        keys.add(executor.submit(write));
+      }
+      start.countDown();
+
+      Set<Key> stored = new HashSet<>();
+      for (Future<Key> key : keys) {
+        stored.add(key.get());
+      }
+      Assert.assertEquals(WRITERS, stored.size());
+    } finally {
+      executor.shutdown();
+    }
+
+    Assert.assertEquals(WRITERS, SharedServices.getDatastore()
+        .prepare(new Query("Comment").setKeysOnly()).countEntities());
+    Assert.assertEquals(WRITERS, SiteStats.totalCommentsCounter().getCount());
+    for (int marker = 100; marker < 104; marker++) {
+      Assert.assertEquals(WRITERS / 4, SiteStats.markerCommentsCounter(marker).getCount());
+    }
+    Assert.assertEquals(WRITERS / 2, UserTimeline.commentCounter("writer-user-0").getCount());
+    Assert.assertEquals(WRITERS / 2, UserTimeline.commentCounter("writer-user-1").getCount());
+  }
+
+  @Test
+  public void failedWriteStoresAndCountsNothing() {
+    // a comment without a marker cannot be counted, so its transaction fails
+    Entity orphan = new Entity("Comment");
+    orphan.setProperty("user-id", "orphan-user");
+    try {
+      CommentWriter.getInstance().put(orphan);
+      Assert.fail("Expected the write to fail");
+    } catch (DatastoreFailureException e) {
+      // expected
+    }
+
+    Assert.assertEquals(0, SharedServices.getDatastore()
+        .prepare(new Query("Comment").setKeysOnly()).countEntities());
+    Assert.assertEquals(0, UserTimeline.commentCounter("orphan-user").getCount());
+  }
+
+  private static Entity newComment(long markerId, String userId) {
+    Entity comment = CommentThreads.newCommentEntity(markerId);
+    comment.setProperty("comment-text", "hello");
+    comment.setProperty("marker-id", markerId);
+    comment.setProperty("user-id", userId);
+    comment.setProperty("timestamp", System.currentTimeMillis());
+    return comment;
+  }
+}
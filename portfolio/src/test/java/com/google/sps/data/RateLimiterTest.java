@@ -0,0 +1,76 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class RateLimiterTest {
+
+  private long now = 0;
+  private final RateLimiter limiter =
+      new RateLimiter(/*burst=*/ 3, /*tokensPerMinute=*/ 6, () -> now);
+
+  @Test
+  public void allowsBurstThenWaitsForRefill() {
+    for (int i = 0; i < 3; i++) {
+      Assert.assertEquals(0, limiter.tryAcquire("a"));
+    }
+    // 6 tokens a minute is one every 10 seconds
+    Assert.assertEquals(TimeUnit.SECONDS.toNanos(10), limiter.tryAcquire("a"));
+
+    now += TimeUnit.SECONDS.toNanos(4);
+    Assert.assertEquals(TimeUnit.SECONDS.toNanos(6), limiter.tryAcquire("a"));
+
+    now += TimeUnit.SECONDS.toNanos(6);
+    Assert.assertEquals(0, limiter.tryAcquire("a"));
+  }
+
+  @Test
+  public void clientsHaveSeparateBuckets() {
+    for (int i = 0; i < 3; i++) {
+      limiter.tryAcquire("a");
+    }
+    Assert.assertTrue(limiter.tryAcquire("a") > 0);
+    Assert.assertEquals(0, limiter.tryAcquire("b"));
+  }
+
+  @Test
+  public void refillsNoMoreThanBurst() {
+    limiter.tryAcquire("a");
+    now += TimeUnit.HOURS.toNanos(1);
+    for (int i = 0; i < 3; i++) {
+      Assert.assertEquals(0, limiter.tryAcquire("a"));
+    }
+    Assert.assertTrue(limiter.tryAcquire("a") > 0);
+  }
+
+  @Test
+  public void evictsIdleBuckets() {
+    limiter.tryAcquire("a");
+    now += TimeUnit.SECONDS.toNanos(55);
+    limiter.tryAcquire("b");
+    Assert.assertEquals(2, limiter.size());
+
+    // the sweep runs a minute in: "a" has refilled by then, "b" has not
+    now += TimeUnit.SECONDS.toNanos(5);
+    limiter.tryAcquire("b");
+    Assert.assertEquals(1, limiter.size());
+  }
+}
@@ -0,0 +1,70 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import com.google.gson.Gson;
+import java.util.Arrays;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Checks that the hand-written adapters write the same JSON as reflective Gson did. */
+@RunWith(JUnit4.class)
+public final class SharedServicesTest {
+
+  private final Gson reflectiveGson = new Gson();
+  private final Gson gson = SharedServices.getGson();
+
+  @Test
+  public void comment() {
+    assertSameJson(new Comment(12, "Great \"view\"\n", 34, "user-1", 1590000000000L));
+    assertSameJson(new Comment(12, null, 34, null, 0));
+  }
+
+  @Test
+  public void marker() {
+    assertSameJson(new Marker(56, true, 43.6532, -79.3832));
+  }
+
+  @Test
+  public void markerCluster() {
+    assertSameJson(new MarkerCluster(43.6, -79.4, 1, 56L));
+    assertSameJson(new MarkerCluster(43.6, -79.4, 7, null));
+  }
+
+  @Test
+  public void user() {
+    assertSameJson(new User("a@example.com", "user-1", "Ann", true, "/logout"));
+    assertSameJson(new User("user-1", "Ann", false));
+  }
+
+  @Test
+  public void listOfComments() {
+    assertSameJson(Arrays.asList(
+        new Comment(1, "first", 2, "user-1", 3), new Comment(4, "second", 5, "user-2", 6)));
+  }
+
+  @Test
+  public void readsWhatItWrites() {
+    Comment comment = new Comment(12, "text", 34, "user-1", 56);
+    String json = gson.toJson(comment);
+    Assert.assertEquals(json, gson.toJson(gson.fromJson(json, Comment.class)));
+  }
+
+  private void assertSameJson(Object value) {
+    Assert.assertEquals(reflectiveGson.toJson(value), gson.toJson(value));
+  }
+}
@@ -0,0 +1,70 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class TracingTest {
+
+  @Test
+  public void spansOutsideATraceAreNotRecorded() {
+    try (Tracing.Span span = Tracing.span(Tracing.Phase.DATASTORE)) {
+      // nothing to time
+    }
+    Assert.assertNull(Tracing.endTrace());
+  }
+
+  @Test
+  public void nestedSpansOfAPhaseAreCountedOnce() throws InterruptedException {
+    Tracing.beginTrace();
+    try (Tracing.Span outer = Tracing.span(Tracing.Phase.SERIALIZE)) {
+      try (Tracing.Span inner = Tracing.span(Tracing.Phase.SERIALIZE)) {
+        Thread.sleep(5);
+      }
+      Thread.sleep(5);
+    }
+    long[] phaseNanos = Tracing.endTrace();
+
+    long serializeNanos = phaseNanos[Tracing.Phase.SERIALIZE.ordinal()];
+    Assert.assertTrue(serializeNanos >= 10_000_000);
+    Assert.assertTrue(serializeNanos < 1_000_000_000);
+    Assert.assertEquals(0, phaseNanos[Tracing.Phase.DATASTORE.ordinal()]);
+  }
+
+  @Test
+  public void histogramBucketsAreCumulative() {
+    Histogram histogram = new Histogram();
+    histogram.record(500_000);
+    histogram.record(3_000_000);
+    histogram.record(20_000_000_000L);
+
+    StringWriter text = new StringWriter();
+    histogram.write(new PrintWriter(text), "latency_seconds", "endpoint=\"/a\"");
+    String output = text.toString();
+
+    Assert.assertTrue(output.contains("latency_seconds_bucket{endpoint=\"/a\",le=\"0.001\"} 1\n"));
+    Assert.assertTrue(output.contains("latency_seconds_bucket{endpoint=\"/a\",le=\"0.005\"} 2\n"));
+    Assert.assertTrue(output.contains("latency_seconds_bucket{endpoint=\"/a\",le=\"10.0\"} 2\n"));
+    Assert.assertTrue(output.contains("latency_seconds_bucket{endpoint=\"/a\",le=\"+Inf\"} 3\n"));
+    Assert.assertTrue(output.contains("latency_seconds_count{endpoint=\"/a\"} 3\n"));
+    Assert.assertTrue(output.contains("latency_seconds_sum{endpoint=\"/a\"} 20.0035"));
+  }
+}
@@ -0,0 +1,155 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import com.google.appengine.api.datastore.DatastoreFailureException;
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.DatastoreTimeoutException;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.EntityNotFoundException;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.datastore.Transaction;
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A counter that is incremented in memory and saved to Datastore as NUM_SHARDS entities.
+ *
+ * <p>Increments go to a LongAdder, which many threads can update without contending.
+ * Every SYNC_MILLIS, the increments counted since the last sync are added to a random
+ * shard, since a single entity can only be updated about once a second and every instance
+ * of the app syncs. The shards are then summed, and the count is that sum plus the
+ * increments this instance has not synced yet. Syncing happens on the request thread that
+ * increments first once a sync is due, since App Engine threads do not outlive their
+ * request.
+ */
+public final class ShardedCounter {
+
+  /** Number of entities the counter is split into. */
+  private static final int NUM_SHARDS = 20;
+
+  /** How often increments are saved and the shards are read. */
+  private static final long SYNC_MILLIS = 5000;
+
+  private final String name;
+  private final LongAdder increments = new LongAdder();
+  private final AtomicLong nextSyncAt = new AtomicLong();
+
+  /** What was last read from Datastore; replaced as a whole so reads are consistent. */
+  private volatile Persisted persisted = new Persisted(0, 0);
+
+  /** Reads the counter's shards from Datastore. */
+  public ShardedCounter(String name) {
+    this.name = name;
+    sync();
+  }
+
+  /** Adds one to the counter, and syncs with Datastore if a sync is due. */
+  public void increment() {
+    increments.increment();
+
+    long syncAt = nextSyncAt.get();
+    long now = System.currentTimeMillis();
+    // only the thread that moves the time forward syncs
+    if (now >= syncAt && nextSyncAt.compareAndSet(syncAt, now + SYNC_MILLIS)) {
+      sync();
+    }
+  }
+
+  /** @return the count in Datastore as of the last sync plus the increments since */
+  public long getCount() {
+    Persisted current = persisted;
+    return current.stored + increments.sum() - current.saved;
+  }
+
+  /**
+   * Adds the increments counted since the last sync to a shard, then reads the sum of all
+   * the shards. If the shard is contended or Datastore fails, the increments are kept for
+   * the next sync, and the request that triggered the sync is unaffected.
+   */
+  public synchronized void sync() {
+    nextSyncAt.set(System.currentTimeMillis() + SYNC_MILLIS);
+    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+    long counted = increments.sum();
+    long saved = persisted.saved;
+    if (counted > saved) {
+      Transaction txn = null;
+      try {
+        txn = datastore.beginTransaction();
+        Key shardKey = shardKey(ThreadLocalRandom.current().nextInt(NUM_SHARDS));
+        Entity shard;
+        try {
+          shard = datastore.get(txn, shardKey);
+        } catch (EntityNotFoundException e) {
+          shard = new Entity(shardKey);
+          shard.setUnindexedProperty("count", 0L);
+        }
+        shard.setUnindexedProperty("count", (long) shard.getProperty("count") + counted - saved);
+        datastore.put(txn, shard);
+        txn.commit();
+        saved = counted;
+      } catch (ConcurrentModificationException e) {
+        // the next sync most likely picks a different shard
+      } catch (DatastoreFailureException | DatastoreTimeoutException e) {
+        // try again next sync
+      } finally {
+        if (txn != null && txn.isActive()) {
+          try {
+            txn.rollback();
+          } catch (DatastoreFailureException | DatastoreTimeoutException e) {
+            // the transaction expires by itself
+          }
+        }
+      }
+    }
+
+    List<Key> shardKeys = new ArrayList<>(NUM_SHARDS);
+    for (int i = 0; i < NUM_SHARDS; i++) {
+      shardKeys.add(shardKey(i));
+    }
+    Persisted previous = persisted;
+    try {
+      long stored = 0;
+      for (Entity shard : datastore.get(shardKeys).values()) {
+        stored += (long) shard.getProperty("count");
+      }
+      persisted = new Persisted(stored, saved);
+    } catch (DatastoreFailureException | DatastoreTimeoutException e) {
+      // Keep the old sum, but record what was just saved so it is not saved twice.
+      persisted = new Persisted(previous.stored + saved - previous.saved, saved);
+    }
+  }
+
+  private Key shardKey(int shard) {
+    return KeyFactory.createKey("CounterShard", name + "#" + shard);
+  }
+
+  /** The sum of the shards, and how many of this instance's increments it includes. */
+  private static final class Persisted {
+    private final long stored;
+    private final long saved;
+
+    private Persisted(long stored, long saved) {
+      this.stored = stored;
+      this.saved = saved;
+    }
+  }
+}
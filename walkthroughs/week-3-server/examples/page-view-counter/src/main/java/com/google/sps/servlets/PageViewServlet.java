@@ -14,24 +14,39 @@
 
 package com.google.sps.servlets;
 
+import com.google.sps.data.ShardedCounter;
 import java.io.IOException;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
-/** Servlet that returns HTML that contains the page view count. */
+/**
+ * Servlet that returns HTML that contains the page view count, which is kept in Datastore
+ * so every instance shares it.
+ */
 @WebServlet("/page-views")
 public class PageViewServlet extends HttpServlet {
 
-  private int pageViews = 0;
+  private ShardedCounter pageViews;
+
+  @Override
+  public void init() {
+    pageViews = new ShardedCounter("page-views");
+  }
+
+  @Override
+  public void destroy() {
+    pageViews.sync();
+  }
 
   @Override
   public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
-    pageViews++;
+    pageViews.increment();
 
     response.setContentType("text/html;");
     response.getWriter().println("<h1>Page Views</h1>");
-    response.getWriter().println("<p>This page has been viewed " + pageViews + " times.</p>");
+    response.getWriter().println(
+        "<p>This page has been viewed " + pageViews.getCount() + " times.</p>");
   }
 }
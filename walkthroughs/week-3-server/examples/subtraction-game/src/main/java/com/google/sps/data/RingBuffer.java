@@ -0,0 +1,58 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.sps.data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/** A list of at most a fixed number of elements, where adding to a full list drops the oldest. */
+public final class RingBuffer<E> {
+
+  private final Object[] elements;
+
+  /** Index of the oldest element. */
+  private int start = 0;
+  private int size = 0;
+
+  public RingBuffer(int capacity) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+    }
+    elements = new Object[capacity];
+  }
+
+  public void add(E element) {
+    if (size < elements.length) {
+      elements[(start + size) % elements.length] = element;
+      size++;
+    } else {
+      elements[start] = element;
+      start = (start + 1) % elements.length;
+    }
+  }
+
+  public int size() {
+    return size;
+  }
+
+  /** @return the elements from oldest to newest */
+  @SuppressWarnings("unchecked")
+  public List<E> toList() {
+    List<E> list = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      list.add((E) elements[(start + i) % elements.length]);
+    }
+    return list;
+  }
+}
@@ -0,0 +1,142 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.sps.data;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.UnaryOperator;
+
+/**
+ * Values kept per session id, e.g. from a cookie, that are dropped after IDLE_MILLIS
+ * without being used. At most about maxSessions are kept, so clients that keep starting
+ * sessions cannot fill memory: starting a session when the store is full drops the least
+ * recently used ones instead.
+ *
+ * <p>Sessions are held in a ConcurrentHashMap, so requests for different sessions do not
+ * contend. Once a minute, the request that notices first removes the idle sessions. Finding
+ * the least recently used sessions takes a sort, so a full store drops the oldest
+ * 1 / EVICT_DIVISOR of its sessions at once, which leaves room for that many new ones.
+ */
+public final class SessionStore<T> {
+
+  /** How long a session is kept after it was last used. */
+  private static final long IDLE_MILLIS = 30 * 60 * 1000;
+
+  /** How often idle sessions are removed. */
+  private static final long SWEEP_MILLIS = 60 * 1000;
+
+  /** A full store drops this fraction of its sessions, e.g. 1/100th. */
+  private static final int EVICT_DIVISOR = 100;
+
+  private final int maxSessions;
+  private final Map<String, Session<T>> sessions = new ConcurrentHashMap<>();
+  private final AtomicLong nextSweepAt = new AtomicLong(System.currentTimeMillis());
+  private final Object evictLock = new Object();
+
+  public SessionStore(int maxSessions) {
+    this.maxSessions = maxSessions;
+  }
+
+  /** @return the session's value, or null if there is none or it was idle too long */
+  public T get(String id) {
+    long now = System.currentTimeMillis();
+    sweepIfDue(now);
+    Session<T> session = sessions.get(id);
+    if (session == null || session.isIdle(now)) {
+      return null;
+    }
+    session.lastUsed = now;
+    return session.value;
+  }
+
+  /**
+   * Atomically replaces the session's value with the result of update, which gets null if
+   * there is no value or it was idle too long.
+   *
+   * @return the new value
+   */
+  public T update(String id, UnaryOperator<T> update) {
+    long now = System.currentTimeMillis();
+    sweepIfDue(now);
+    // Concurrent updates may each add a session, so the limit can be exceeded by a few.
+    if (sessions.size() >= maxSessions && !sessions.containsKey(id)) {
+      evictLeastRecentlyUsed();
+    }
+    return sessions.compute(id, (key, session) -> {
+      T value = session == null || session.isIdle(now) ? null : session.value;
+      return new Session<>(update.apply(value), now);
+    }).value;
+  }
+
+  /** @return the number of sessions, including idle ones that have not been removed yet */
+  public int size() {
+    return sessions.size();
+  }
+
+  private void sweepIfDue(long now) {
+    long sweepAt = nextSweepAt.get();
+    // only the thread that moves the time forward sweeps
+    if (now >= sweepAt && nextSweepAt.compareAndSet(sweepAt, now + SWEEP_MILLIS)) {
+      sessions.values().removeIf(session -> session.isIdle(now));
+    }
+  }
+
+  /** Drops the least recently used sessions, unless another thread just did. */
+  private void evictLeastRecentlyUsed() {
+    synchronized (evictLock) {
+      if (sessions.size() < maxSessions) {
+        return;
+      }
+      // Sessions are used while this runs, so sort a copy of the times they were last used.
+      long[] lastUsed = sessions.values().stream().mapToLong(session -> session.lastUsed)
+          .toArray();
+      if (lastUsed.length == 0) {
+        return;
+      }
+      Arrays.sort(lastUsed);
+      int count = Math.min(Math.max(1, maxSessions / EVICT_DIVISOR), lastUsed.length);
+      long cutoff = lastUsed[count - 1];
+      // Many sessions may have been used in the same millisecond as the cutoff, so only
+      // as many of those are dropped as are needed to drop count in all.
+      int below = 0;
+      while (lastUsed[below] < cutoff) {
+        below++;
+      }
+      int atCutoff = count - below;
+      for (Map.Entry<String, Session<T>> entry : sessions.entrySet()) {
+        long used = entry.getValue().lastUsed;
+        if (used < cutoff || (used == cutoff && atCutoff-- > 0)) {
+          sessions.remove(entry.getKey(), entry.getValue());
+        }
+      }
+    }
+  }
+
+  /** A value and when it was last used. */
+  private static final class Session<T> {
+    private final T value;
+    private volatile long lastUsed;
+
+    private Session(T value, long lastUsed) {
+      this.value = value;
+      this.lastUsed = lastUsed;
+    }
+
+    private boolean isIdle(long now) {
+      return now - lastUsed > IDLE_MILLIS;
+    }
+  }
+}
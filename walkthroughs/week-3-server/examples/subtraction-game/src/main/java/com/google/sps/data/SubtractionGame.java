@@ -14,32 +14,42 @@
 
 package com.google.sps.data;
 
-import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * Class representing the subtraction game, where players take turns subtracting from 21 to reach 0.
  *
- * <p>Note: The private variables in this class are converted into JSON.
+ * <p>A player's requests can overlap, so the methods are synchronized. The State returned by
+ * getState() is what gets converted into JSON.
  */
 public class SubtractionGame {
 
-  /** List of descriptions of turns, e.g. "Player 1 took 3. New total: 18" */
-  private final List<String> history = new ArrayList<>();
+  private static final int STARTING_TOTAL = 21;
+
+  /**
+   * Number of lines of history that are kept: enough for a whole game, which has at most
+   * STARTING_TOTAL moves of two lines each and two lines announcing the winner, with room
+   * to spare.
+   */
+  private static final int HISTORY_SIZE = 2 * STARTING_TOTAL + 4;
+
+  /** The most recent descriptions of turns, e.g. "Player 1 took 3. New total: 18" */
+  private final RingBuffer<String> history = new RingBuffer<>(HISTORY_SIZE);
 
   /** The total of the current turn. */
-  private int currentTotal = 21;
+  private int currentTotal = STARTING_TOTAL;
 
   /** Whether this game has ended, i.e. one of the players reached 0. */
   private boolean gameOver = false;
 
   /** Returns whether this game has ended. */
-  public boolean isGameOver() {
+  public synchronized boolean isGameOver() {
     return gameOver;
   }
 
   /** Takes the player's turn, subtracting `playerChoice` from the total. */
-  public void takePlayerTurn(int playerChoice) {
+  public synchronized void takePlayerTurn(int playerChoice) {
     currentTotal -= playerChoice;
     if (currentTotal < 0) {
       currentTotal = 0;
@@ -65,7 +75,7 @@ public class SubtractionGame {
     } else {
       // The computer can't win this turn,
       // so generate a random number between 1 and 3 inclusive.
-      computerChoice = 1 + (int) (Math.random() * 3);
+      computerChoice = ThreadLocalRandom.current().nextInt(1, 4);
     }
 
     currentTotal -= computerChoice;
@@ -82,4 +92,26 @@ public class SubtractionGame {
     history.add(player + " subtracted " + choice);
     history.add("New total: " + newTotal);
   }
+
+  /** Returns a copy of the game's current state. */
+  public synchronized State getState() {
+    return new State(history.toList(), currentTotal, gameOver);
+  }
+
+  /**
+   * A copy of the state of a game.
+   *
+   * <p>Note: The private variables in this class are converted into JSON.
+   */
+  public static final class State {
+    private final List<String> history;
+    private final int currentTotal;
+    private final boolean gameOver;
+
+    private State(List<String> history, int currentTotal, boolean gameOver) {
+      this.history = history;
+      this.currentTotal = currentTotal;
+      this.gameOver = gameOver;
+    }
+  }
 }
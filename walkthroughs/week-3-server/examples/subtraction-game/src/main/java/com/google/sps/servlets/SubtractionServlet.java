@@ -14,34 +14,66 @@
 
 package com.google.sps.servlets;
 
+import com.google.sps.data.SessionStore;
 import com.google.sps.data.SubtractionGame;
 import com.google.gson.Gson;
 import java.io.IOException;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.regex.Pattern;
 import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.Cookie;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
-/** Servlet that encapsulates the subtraction game. */
+/**
+ * Servlet that encapsulates the subtraction game. Each player has their own game, found by
+ * the id in a cookie.
+ *
+ * <p>Games are only kept in this instance's memory. The example assumes a single instance,
+ * or session affinity routing each player to the same one; otherwise a player whose request
+ * reaches another instance starts a new game there. Games are also lost when the instance
+ * restarts. Keeping them across instances would mean storing them in Datastore or Memcache.
+ */
 @WebServlet("/subtraction-game")
 public final class SubtractionServlet extends HttpServlet {
 
-  private SubtractionGame game = new SubtractionGame();
+  private static final String GAME_ID_COOKIE = "subtraction-game-id";
+
+  /** Number of random bytes in a game id. */
+  private static final int GAME_ID_BYTES = 16;
+
+  /** Matches the ids newGameId() returns, so other cookie values are not used as keys. */
+  private static final Pattern GAME_ID_PATTERN = Pattern.compile("[A-Za-z0-9_-]{22}");
+
+  /**
+   * Most games kept in memory at once, above the 20,000 players a load test keeps playing.
+   * A game with its full history takes a few KB, so this is around 100 MB at worst. When
+   * the limit is reached, the least recently played games are dropped to make room.
+   */
+  private static final int MAX_GAMES = 25000;
+
+  private final SessionStore<SubtractionGame> games = new SessionStore<>(MAX_GAMES);
+  private final SecureRandom random = new SecureRandom();
+  private final Gson gson = new Gson();
 
   @Override
   public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    String gameId = getGameId(request);
+    SubtractionGame game = gameId != null ? games.get(gameId) : null;
+    if (game == null) {
+      // Players who have not played yet see a new game, which is only stored once they do.
+      game = new SubtractionGame();
+    }
+
     response.setContentType("application/json");
-    String json = new Gson().toJson(game);
+    String json = gson.toJson(game.getState());
     response.getWriter().println(json);
   }
 
   @Override
   public void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
-    // If the user sends another POST request after the game is over, then start a new game.
-    if (game.isGameOver()) {
-      game = new SubtractionGame();
-    }
-
     // Get the input from the form.
     int playerChoice = getPlayerChoice(request);
     if (playerChoice == -1) {
@@ -50,12 +82,56 @@ public final class SubtractionServlet extends HttpServlet {
       return;
     }
 
-    game.takePlayerTurn(playerChoice);
+    String gameId = getGameId(request);
+    boolean newPlayer = gameId == null;
+    if (newPlayer) {
+      gameId = newGameId();
+    }
+
+    // If the user sends another POST request after the game is over, then start a new game.
+    // Both happen in one update so that overlapping requests cannot play a finished game.
+    games.update(gameId, current -> {
+      SubtractionGame game =
+          current == null || current.isGameOver() ? new SubtractionGame() : current;
+      game.takePlayerTurn(playerChoice);
+      return game;
+    });
+    if (newPlayer) {
+      Cookie cookie = new Cookie(GAME_ID_COOKIE, gameId);
+      cookie.setHttpOnly(true);
+      cookie.setPath("/");
+      response.addCookie(cookie);
+    }
 
     // Redirect back to the HTML page.
     response.sendRedirect("/index.html");
   }
 
+  /**
+   * Returns the id of the player's game from their cookie, or null if they have none or
+   * the cookie does not hold an id this servlet could have issued.
+   */
+  private static String getGameId(HttpServletRequest request) {
+    Cookie[] cookies = request.getCookies();
+    if (cookies == null) {
+      return null;
+    }
+    for (Cookie cookie : cookies) {
+      if (cookie.getName().equals(GAME_ID_COOKIE)
+          && GAME_ID_PATTERN.matcher(cookie.getValue()).matches()) {
+        return cookie.getValue();
+      }
+    }
+    return null;
+  }
+
+  /** Returns a new random game id that cannot be guessed. */
+  private String newGameId() {
+    byte[] bytes = new byte[GAME_ID_BYTES];
+    random.nextBytes(bytes);
+    return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+  }
+
   /** Returns the choice entered by the player, or -1 if the choice was invalid. */
   private int getPlayerChoice(HttpServletRequest request) {
     // Get the input from the form.
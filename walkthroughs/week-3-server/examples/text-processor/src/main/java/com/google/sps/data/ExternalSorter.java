@@ -0,0 +1,233 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
+
+/**
+ * Sorts more strings than fit in memory. Added strings are buffered until their estimated size
+ * reaches the memory budget, then sorted and spilled to a temporary file as a run. Reading the
+ * sorted strings merges the runs.
+ */
+public final class ExternalSorter implements Closeable {
+
+  /** Most runs merged at once, which bounds the read buffers open during a merge. */
+  private static final int MAX_MERGE_WIDTH = 64;
+
+  private static final int RUN_BUFFER_BYTES = 64 * 1024;
+
+  /** Rough heap cost of a buffered string besides its characters. */
+  private static final int STRING_OVERHEAD_BYTES = 64;
+
+  private final long memoryBudget;
+  private final List<String> buffer = new ArrayList<>();
+  private long bufferedBytes = 0;
+
+  /** The runs that hold everything added that is not in the buffer. */
+  private List<Run> runs = new ArrayList<>();
+
+  /** Every temporary file created, so they are deleted even if a merge fails. */
+  private final List<Path> tempFiles = new ArrayList<>();
+
+  /** @param memoryBudget roughly how many bytes of strings to buffer before spilling a run */
+  public ExternalSorter(long memoryBudget) {
+    this.memoryBudget = memoryBudget;
+  }
+
+  public void add(String value) throws IOException {
+    buffer.add(value);
+    bufferedBytes += STRING_OVERHEAD_BYTES + 2L * value.length();
+    if (bufferedBytes >= memoryBudget) {
+      spill();
+    }
+  }
+
+  /** Passes every added string to the consumer in sorted order. */
+  public void forEachSorted(Consumer<String> consumer) throws IOException {
+    if (runs.isEmpty()) {
+      buffer.sort(null);
+      buffer.forEach(consumer);
+      return;
+    }
+    if (!buffer.isEmpty()) {
+      spill();
+    }
+
+    // Merge in passes until few enough runs are left to merge into the consumer.
+    while (runs.size() > MAX_MERGE_WIDTH) {
+      List<Run> merged = new ArrayList<>();
+      for (int i = 0; i < runs.size(); i += MAX_MERGE_WIDTH) {
+        List<Run> group = runs.subList(i, Math.min(i + MAX_MERGE_WIDTH, runs.size()));
+        if (group.size() == 1) {
+          merged.add(group.get(0));
+          continue;
+        }
+        try (RunWriter writer = new RunWriter(createTempFile())) {
+          merge(group, writer::write);
+          merged.add(writer.toRun());
+        }
+        for (Run run : group) {
+          Files.deleteIfExists(run.path);
+        }
+      }
+      runs = merged;
+    }
+    merge(runs, consumer::accept);
+  }
+
+  /** Deletes the temporary files. */
+  @Override
+  public void close() throws IOException {
+    buffer.clear();
+    runs.clear();
+    for (Path file : tempFiles) {
+      Files.deleteIfExists(file);
+    }
+    tempFiles.clear();
+  }
+
+  /** Sorts the buffer and writes it to a new run. */
+  private void spill() throws IOException {
+    buffer.sort(null);
+    try (RunWriter writer = new RunWriter(createTempFile())) {
+      for (String value : buffer) {
+        writer.write(value);
+      }
+      runs.add(writer.toRun());
+    }
+    buffer.clear();
+    bufferedBytes = 0;
+  }
+
+  private Path createTempFile() throws IOException {
+    Path file = Files.createTempFile("sort-run-", ".tmp");
+    tempFiles.add(file);
+    return file;
+  }
+
+  private static void merge(List<Run> group, Sink sink) throws IOException {
+    List<RunReader> opened = new ArrayList<>(group.size());
+    PriorityQueue<RunReader> readers =
+        new PriorityQueue<>(group.size(), Comparator.comparing(reader -> reader.current));
+    try {
+      for (Run run : group) {
+        RunReader reader = new RunReader(run);
+        opened.add(reader);
+        if (reader.advance()) {
+          readers.add(reader);
+        }
+      }
+      while (!readers.isEmpty()) {
+        RunReader reader = readers.poll();
+        sink.accept(reader.current);
+        if (reader.advance()) {
+          readers.add(reader);
+        }
+      }
+    } finally {
+      for (RunReader reader : opened) {
+        reader.close();
+      }
+    }
+  }
+
+  /** Receives merged strings, which may be written to another run. */
+  private interface Sink {
+    void accept(String value) throws IOException;
+  }
+
+  /** A file of sorted strings, each written as its UTF-8 length and then its bytes. */
+  private static final class Run {
+    private final Path path;
+    private final long count;
+
+    private Run(Path path, long count) {
+      this.path = path;
+      this.count = count;
+    }
+  }
+
+  private static final class RunWriter implements Closeable {
+    private final Path path;
+    private final DataOutputStream out;
+    private long count = 0;
+
+    private RunWriter(Path path) throws IOException {
+      this.path = path;
+      this.out = new DataOutputStream(
+          new BufferedOutputStream(Files.newOutputStream(path), RUN_BUFFER_BYTES));
+    }
+
+    private void write(String value) throws IOException {
+      byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+      out.writeInt(bytes.length);
+      out.write(bytes);
+      count++;
+    }
+
+    private Run toRun() throws IOException {
+      out.flush();
+      return new Run(path, count);
+    }
+
+    @Override
+    public void close() throws IOException {
+      out.close();
+    }
+  }
+
+  private static final class RunReader implements Closeable {
+    private final DataInputStream in;
+    private long remaining;
+    private String current;
+
+    private RunReader(Run run) throws IOException {
+      this.in = new DataInputStream(
+          new BufferedInputStream(Files.newInputStream(run.path), RUN_BUFFER_BYTES));
+      this.remaining = run.count;
+    }
+
+    /** @return whether there was another string to read into current */
+    private boolean advance() throws IOException {
+      if (remaining == 0) {
+        current = null;
+        return false;
+      }
+      byte[] bytes = new byte[in.readInt()];
+      in.readFully(bytes);
+      current = new String(bytes, StandardCharsets.UTF_8);
+      remaining--;
+      return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+      in.close();
+    }
+  }
+}
@@ -0,0 +1,75 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Splits text separated by commas or line breaks into words, reading it a buffer at a time so
+ * the whole text never has to be in memory. Whitespace around each word is trimmed, and empty
+ * words are skipped.
+ */
+public final class WordScanner {
+
+  private final Reader reader;
+  private final char[] buffer = new char[8192];
+  private int position = 0;
+  private int limit = 0;
+  private boolean done = false;
+
+  /** The word being read, without its leading whitespace. */
+  private final StringBuilder word = new StringBuilder();
+
+  public WordScanner(Reader reader) {
+    this.reader = reader;
+  }
+
+  /** @return the next word, or null if there are no more */
+  public String next() throws IOException {
+    while (!done) {
+      if (position == limit) {
+        limit = reader.read(buffer);
+        position = 0;
+        if (limit == -1) {
+          limit = 0;
+          done = true;
+          return takeWord();
+        }
+      }
+      char c = buffer[position++];
+      if (c == ',' || c == '\n' || c == '\r') {
+        String next = takeWord();
+        if (next != null) {
+          return next;
+        }
+      } else if (word.length() > 0 || !Character.isWhitespace(c)) {
+        word.append(c);
+      }
+    }
+    return null;
+  }
+
+  /** @return the word read so far without its trailing whitespace, or null if it is empty */
+  private String takeWord() {
+    int end = word.length();
+    while (end > 0 && Character.isWhitespace(word.charAt(end - 1))) {
+      end--;
+    }
+    String next = end == 0 ? null : word.substring(0, end);
+    word.setLength(0);
+    return next;
+  }
+}
@@ -14,40 +14,86 @@
 
 package com.google.sps.servlets;
 
+import com.google.sps.data.ExternalSorter;
+import com.google.sps.data.WordScanner;
 import java.io.IOException;
-import java.util.Arrays;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+import javax.servlet.ServletException;
+import javax.servlet.annotation.MultipartConfig;
+import javax.servlet.annotation.WebInitParam;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.Part;
 
-/** Servlet that processes text. */
-@WebServlet("/text")
+/**
+ * Servlet that processes text. The text is read, and unless it is sorted written back, a word
+ * at a time, so uploaded files can be larger than memory.
+ */
+@WebServlet(
+    value = "/text",
+    initParams = {
+        // roughly how many bytes of words to sort in memory before spilling them to disk
+        @WebInitParam(name = "sort-memory-bytes", value = "16777216")})
+// uploads larger than this are buffered in a temporary file by the server
+@MultipartConfig(fileSizeThreshold = 1024 * 1024)
 public final class TextProcessorServlet extends HttpServlet {
 
+  private long sortMemoryBytes;
+
+  @Override
+  public void init() {
+    sortMemoryBytes = Long.parseLong(getInitParameter("sort-memory-bytes"));
+  }
+
   @Override
-  public void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
-    // Get the input from the form.
-    String text = getParameter(request, "text-input", "");
+  public void doPost(HttpServletRequest request, HttpServletResponse response)
+      throws IOException, ServletException {
+    // Get the options from the form.
     boolean upperCase = Boolean.parseBoolean(getParameter(request, "upper-case", "false"));
     boolean sort = Boolean.parseBoolean(getParameter(request, "sort", "false"));
 
-    // Convert the text to upper case.
-    if (upperCase) {
-      text = text.toUpperCase();
-    }
-
-    // Break the text into individual words.
-    String[] words = text.split("\\s*,\\s*");
+    try (Reader input = openInput(request)) {
+      // Break the text into individual words.
+      WordScanner words = new WordScanner(input);
 
-    // Sort the words.
-    if (sort) {
-      Arrays.sort(words);
+      response.setContentType("text/html;");
+      PrintWriter out = response.getWriter();
+      WordListPrinter printer = new WordListPrinter(out);
+      out.print('[');
+      if (sort) {
+        // Sort the words, spilling them to disk if there are too many to sort in memory.
+        try (ExternalSorter sorter = new ExternalSorter(sortMemoryBytes)) {
+          for (String word; (word = words.next()) != null; ) {
+            sorter.add(upperCase ? word.toUpperCase() : word);
+          }
+          sorter.forEachSorted(printer);
+        }
+      } else {
+        for (String word; (word = words.next()) != null; ) {
+          printer.accept(upperCase ? word.toUpperCase() : word);
+        }
+      }
+      out.println(']');
     }
+  }
 
-    // Respond with the result.
-    response.setContentType("text/html;");
-    response.getWriter().println(Arrays.toString(words));
+  /** @return the uploaded file if there is one, or else the text typed into the form */
+  private Reader openInput(HttpServletRequest request) throws IOException, ServletException {
+    String contentType = request.getContentType();
+    if (contentType != null && contentType.startsWith("multipart/form-data")) {
+      Part file = request.getPart("text-file");
+      if (file != null && file.getSize() > 0) {
+        return new InputStreamReader(file.getInputStream(), StandardCharsets.UTF_8);
+      }
+    }
+    return new StringReader(getParameter(request, "text-input", ""));
   }
 
   /**
@@ -61,4 +107,23 @@ public final class TextProcessorServlet extends HttpServlet {
     }
     return value;
   }
+
+  /** Prints words separated by commas, the way Arrays.toString does. */
+  private static final class WordListPrinter implements Consumer<String> {
+    private final PrintWriter out;
+    private boolean first = true;
+
+    private WordListPrinter(PrintWriter out) {
+      this.out = out;
+    }
+
+    @Override
+    public void accept(String word) {
+      if (!first) {
+        out.print(", ");
+      }
+      out.print(word);
+      first = false;
+    }
+  }
 }
@@ -0,0 +1,88 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Checks that ExternalSorter sorts like Collections.sort however many runs it spills. */
+@RunWith(JUnit4.class)
+public final class ExternalSorterTest {
+
+  @Test
+  public void sortsInMemoryWithoutSpilling() throws IOException {
+    assertSortsLikeCollections(1000, /*memoryBudget=*/ 1 << 20);
+  }
+
+  @Test
+  public void mergesRunsInOnePass() throws IOException {
+    // about 20 strings per run, so fewer runs than can be merged at once
+    assertSortsLikeCollections(1000, /*memoryBudget=*/ 2000);
+  }
+
+  @Test
+  public void mergesManyRunsInSeveralPasses() throws IOException {
+    // about 5 strings per run, so over a thousand runs, merged 64 at a time first
+    assertSortsLikeCollections(6000, /*memoryBudget=*/ 400);
+  }
+
+  @Test
+  public void sortsNothing() throws IOException {
+    assertSortsLikeCollections(0, /*memoryBudget=*/ 400);
+  }
+
+  /** Sorts random words, some repeated and some beyond ASCII, and deletes every run. */
+  private static void assertSortsLikeCollections(int count, long memoryBudget)
+      throws IOException {
+    Set<String> filesBefore = tempRunFiles();
+    Random random = new Random(count);
+    List<String> words = new ArrayList<>();
+    List<String> sorted = new ArrayList<>();
+    try (ExternalSorter sorter = new ExternalSorter(memoryBudget)) {
+      for (int i = 0; i < count; i++) {
+        String word = Integer.toString(random.nextInt(count / 2 + 1), 36);
+        if (random.nextInt(20) == 0) {
+          word += random.nextBoolean() ? "é" : "😀";
+        } else if (random.nextInt(50) == 0) {
+          word = "";
+        }
+        words.add(word);
+        sorter.add(word);
+      }
+      sorter.forEachSorted(sorted::add);
+    }
+
+    Collections.sort(words);
+    Assert.assertEquals(words, sorted);
+    Assert.assertEquals(filesBefore, tempRunFiles());
+  }
+
+  private static Set<String> tempRunFiles() {
+    String[] names = new File(System.getProperty("java.io.tmpdir"))
+        .list((directory, name) -> name.startsWith("sort-run-"));
+    return new HashSet<>(Arrays.asList(names));
+  }
+}
@@ -0,0 +1,403 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+// A copy of this file is kept in week-4-libraries/maps/examples/ufos, since each
+// example is built on its own. Make every change to both copies.
+
+package com.google.sps.data;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Rows of a CSV file stored as one array per column, each of a fixed type.
+ *
+ * <p>The file is parsed straight from its bytes, split into chunks at line breaks that are
+ * parsed in parallel. Plain decimal numbers are converted without creating Strings; anything
+ * else, like exponents, falls back to Double.parseDouble. Columns after the typed ones are
+ * ignored. Rows that are missing a column or have a value that does not parse, like a
+ * header, are skipped and counted.
+ */
+public final class CsvTable {
+
+  /** The type of a column. */
+  public enum Type {
+    INT,
+    DOUBLE
+  }
+
+  /** Largest part of a file mapped at once, since buffers are indexed by int. */
+  private static final int MAX_MAP_BYTES = 1 << 30;
+
+  /** Smallest chunk worth parsing on a thread of its own. */
+  private static final int MIN_CHUNK_BYTES = 1 << 20;
+
+  /** Most significant digits that always convert exactly; 10^15 is less than 2^53. */
+  private static final int MAX_FAST_DIGITS = 15;
+
+  /** Powers of ten that are exact as doubles. */
+  private static final double[] POWERS_OF_TEN = {
+      1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+      1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+
+  private final Object[] columns;
+  private final int rowCount;
+  private final int skippedRows;
+  private final int firstSkippedLine;
+
+  private CsvTable(Type[] types, List<Chunk> chunks) {
+    int rows = 0;
+    int skipped = 0;
+    int firstSkipped = 0;
+    int lines = 0;
+    for (Chunk chunk : chunks) {
+      if (firstSkipped == 0 && chunk.firstSkippedLine != 0) {
+        firstSkipped = lines + chunk.firstSkippedLine;
+      }
+      rows += chunk.rows;
+      skipped += chunk.skipped;
+      lines += chunk.lines;
+    }
+    rowCount = rows;
+    skippedRows = skipped;
+    firstSkippedLine = firstSkipped;
+
+    columns = new Object[types.length];
+    for (int column = 0; column < types.length; column++) {
+      Object values = types[column] == Type.INT ? new int[rows] : new double[rows];
+      int offset = 0;
+      for (Chunk chunk : chunks) {
+        System.arraycopy(chunk.columns[column], 0, values, offset, chunk.rows);
+        offset += chunk.rows;
+      }
+      columns[column] = values;
+    }
+  }
+
+  /** Parses a CSV from a stream, e.g. a resource in the WAR. */
+  public static CsvTable read(InputStream in, Type... types) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    byte[] buffer = new byte[64 * 1024];
+    for (int read; (read = in.read(buffer)) != -1; ) {
+      bytes.write(buffer, 0, read);
+    }
+    ByteBuffer all = ByteBuffer.wrap(bytes.toByteArray());
+    return new CsvTable(types, parseChunks(all, all.limit(), types));
+  }
+
+  /**
+   * Parses a CSV file by memory-mapping it, so its text never has to fit in the heap; only
+   * the parsed columns do.
+   */
+  public static CsvTable map(Path path, Type... types) throws IOException {
+    List<Chunk> chunks = new ArrayList<>();
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      long fileSize = channel.size();
+      long position = 0;
+      while (position < fileSize) {
+        long length = Math.min(MAX_MAP_BYTES, fileSize - position);
+        MappedByteBuffer buffer =
+            channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+        // a line cut off by the end of the region is parsed with the next region
+        int parsed = position + length == fileSize ? (int) length : afterLastLine(buffer);
+        if (parsed == 0) {
+          throw new IOException("Line longer than " + MAX_MAP_BYTES + " bytes in " + path);
+        }
+        chunks.addAll(parseChunks(buffer, parsed, types));
+        position += parsed;
+      }
+    }
+    return new CsvTable(types, chunks);
+  }
+
+  public int getRowCount() {
+    return rowCount;
+  }
+
+  /** @return the number of rows that were skipped because they did not parse */
+  public int getSkippedRows() {
+    return skippedRows;
+  }
+
+  /** @return the line number of the first skipped row, or 0 if none were skipped */
+  public int getFirstSkippedLine() {
+    return firstSkippedLine;
+  }
+
+  /** @return the values of an INT column, which must not be modified */
+  public int[] getInts(int column) {
+    return (int[]) columns[column];
+  }
+
+  /** @return the values of a DOUBLE column, which must not be modified */
+  public double[] getDoubles(int column) {
+    return (double[]) columns[column];
+  }
+
+  /** @return the offset just past the last line break in the buffer, or 0 if it has none */
+  private static int afterLastLine(ByteBuffer buffer) {
+    for (int i = buffer.limit() - 1; i >= 0; i--) {
+      if (buffer.get(i) == '\n') {
+        return i + 1;
+      }
+    }
+    return 0;
+  }
+
+  /** Parses buffer[0, end) in chunks that each start at the beginning of a line. */
+  private static List<Chunk> parseChunks(ByteBuffer buffer, int end, Type[] types) {
+    int chunkCount = Math.max(1,
+        Math.min(Runtime.getRuntime().availableProcessors(), end / MIN_CHUNK_BYTES));
+    int[] starts = new int[chunkCount + 1];
+    starts[chunkCount] = end;
+    for (int i = 1; i < chunkCount; i++) {
+      int start = Math.max(starts[i - 1], (int) ((long) end * i / chunkCount));
+      while (start < end && buffer.get(start - 1) != '\n') {
+        start++;
+      }
+      starts[i] = start;
+    }
+    return IntStream.range(0, chunkCount).parallel()
+        .mapToObj(i -> {
+          Chunk chunk = new Chunk(types, starts[i + 1] - starts[i]);
+          chunk.parse(buffer, starts[i], starts[i + 1]);
+          return chunk;
+        })
+        .collect(Collectors.toList());
+  }
+
+  /** The rows parsed from one chunk of the file. */
+  private static final class Chunk {
+    private final Type[] types;
+    private final Object[] columns;
+    private int rows = 0;
+    private int lines = 0;
+    private int skipped = 0;
+    private int firstSkippedLine = 0;
+
+    /** Values of the row being parsed, committed once they all parse. */
+    private final long[] rowInts;
+    private final double[] rowDoubles;
+
+    /** Whether the last number parsed was valid. */
+    private boolean valid;
+
+    private Chunk(Type[] types, int byteCount) {
+      this.types = types;
+      // numbers in CSVs like these take about 12 bytes
+      int capacity = Math.max(16, byteCount / (12 * Math.max(1, types.length)));
+      columns = new Object[types.length];
+      for (int column = 0; column < types.length; column++) {
+        columns[column] = types[column] == Type.INT ? new int[capacity] : new double[capacity];
+      }
+      rowInts = new long[types.length];
+      rowDoubles = new double[types.length];
+    }
+
+    private void parse(ByteBuffer buffer, int start, int end) {
+      int lineStart = start;
+      while (lineStart < end) {
+        int lineEnd = lineStart;
+        while (lineEnd < end && buffer.get(lineEnd) != '\n') {
+          lineEnd++;
+        }
+        lines++;
+        parseLine(buffer, lineStart, lineEnd);
+        lineStart = lineEnd + 1;
+      }
+    }
+
+    private void parseLine(ByteBuffer buffer, int start, int end) {
+      if (end > start && buffer.get(end - 1) == '\r') {
+        end--;
+      }
+      if (isBlank(buffer, start, end)) {
+        return;
+      }
+      int fieldStart = start;
+      for (int column = 0; column < types.length; column++) {
+        if (fieldStart > end) {
+          skip();
+          return;
+        }
+        int fieldEnd = indexOf(buffer, ',', fieldStart, end);
+        if (types[column] == Type.INT) {
+          rowInts[column] = parseInt(buffer, fieldStart, fieldEnd);
+        } else {
+          rowDoubles[column] = parseDouble(buffer, fieldStart, fieldEnd);
+        }
+        if (!valid) {
+          skip();
+          return;
+        }
+        fieldStart = fieldEnd + 1;
+      }
+
+      if (rows == length(columns[0])) {
+        grow();
+      }
+      for (int column = 0; column < types.length; column++) {
+        if (types[column] == Type.INT) {
+          ((int[]) columns[column])[rows] = (int) rowInts[column];
+        } else {
+          ((double[]) columns[column])[rows] = rowDoubles[column];
+        }
+      }
+      rows++;
+    }
+
+    private void skip() {
+      skipped++;
+      if (firstSkippedLine == 0) {
+        firstSkippedLine = lines;
+      }
+    }
+
+    private void grow() {
+      int capacity = Math.max(16, rows + (rows >> 1));
+      for (int column = 0; column < types.length; column++) {
+        columns[column] = types[column] == Type.INT
+            ? Arrays.copyOf((int[]) columns[column], capacity)
+            : Arrays.copyOf((double[]) columns[column], capacity);
+      }
+    }
+
+    /** @return the int in buffer[start, end), ignoring surrounding spaces */
+    private long parseInt(ByteBuffer buffer, int start, int end) {
+      while (start < end && isSpace(buffer.get(start))) {
+        start++;
+      }
+      while (end > start && isSpace(buffer.get(end - 1))) {
+        end--;
+      }
+      int i = start;
+      boolean negative = false;
+      if (i < end && (buffer.get(i) == '-' || buffer.get(i) == '+')) {
+        negative = buffer.get(i) == '-';
+        i++;
+      }
+      valid = i < end;
+      long value = 0;
+      for (; i < end && valid; i++) {
+        byte b = buffer.get(i);
+        value = value * 10 + (b - '0');
+        valid = b >= '0' && b <= '9' && value <= (long) Integer.MAX_VALUE + 1;
+      }
+      value = negative ? -value : value;
+      valid &= value <= Integer.MAX_VALUE;
+      return value;
+    }
+
+    /** @return the number in buffer[start, end), ignoring surrounding spaces */
+    private double parseDouble(ByteBuffer buffer, int start, int end) {
+      while (start < end && isSpace(buffer.get(start))) {
+        start++;
+      }
+      while (end > start && isSpace(buffer.get(end - 1))) {
+        end--;
+      }
+
+      int i = start;
+      boolean negative = false;
+      if (i < end && (buffer.get(i) == '-' || buffer.get(i) == '+')) {
+        negative = buffer.get(i) == '-';
+        i++;
+      }
+      long mantissa = 0;
+      int digits = 0;
+      int scale = 0;
+      boolean anyDigits = false;
+      boolean seenPoint = false;
+      for (; i < end; i++) {
+        byte b = buffer.get(i);
+        if (b >= '0' && b <= '9') {
+          anyDigits = true;
+          mantissa = mantissa * 10 + (b - '0');
+          if (mantissa != 0) {
+            digits++;
+          }
+          if (seenPoint) {
+            scale++;
+          }
+          if (digits > MAX_FAST_DIGITS || scale >= POWERS_OF_TEN.length) {
+            return parseSlowly(buffer, start, end);
+          }
+        } else if (b == '.' && !seenPoint) {
+          seenPoint = true;
+        } else {
+          return parseSlowly(buffer, start, end);
+        }
+      }
+      if (!anyDigits) {
+        return parseSlowly(buffer, start, end);
+      }
+      valid = true;
+      // both operands are exact, so the division is correctly rounded
+      double value = mantissa / POWERS_OF_TEN[scale];
+      return negative ? -value : value;
+    }
+
+    private double parseSlowly(ByteBuffer buffer, int start, int end) {
+      byte[] bytes = new byte[end - start];
+      for (int i = 0; i < bytes.length; i++) {
+        bytes[i] = buffer.get(start + i);
+      }
+      try {
+        double value = Double.parseDouble(new String(bytes, StandardCharsets.US_ASCII));
+        valid = true;
+        return value;
+      } catch (NumberFormatException e) {
+        valid = false;
+        return 0;
+      }
+    }
+
+    private static int length(Object column) {
+      return column instanceof int[] ? ((int[]) column).length : ((double[]) column).length;
+    }
+
+    private static int indexOf(ByteBuffer buffer, char c, int start, int end) {
+      int i = start;
+      while (i < end && buffer.get(i) != c) {
+        i++;
+      }
+      return i;
+    }
+
+    private static boolean isBlank(ByteBuffer buffer, int start, int end) {
+      for (int i = start; i < end; i++) {
+        if (!isSpace(buffer.get(i))) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private static boolean isSpace(byte b) {
+      return b == ' ' || b == '\t';
+    }
+  }
+}
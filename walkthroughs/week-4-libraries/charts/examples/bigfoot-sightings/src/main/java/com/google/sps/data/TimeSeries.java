@@ -0,0 +1,163 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import java.util.Arrays;
+
+/**
+ * Counts of sightings at points in time, e.g. per year or per day, stored as sorted times
+ * and prefix sums of their counts so that the total over any range of time is two binary
+ * searches away. Ranges share the arrays of the series they came from.
+ */
+public final class TimeSeries {
+
+  private final int[] times;
+
+  /** prefixSums[i] is the sum of the counts before times[i]; it has one more element. */
+  private final long[] prefixSums;
+
+  /** The part of the arrays in this series: times[start, end). */
+  private final int start;
+  private final int end;
+
+  private TimeSeries(int[] times, long[] prefixSums, int start, int end) {
+    this.times = times;
+    this.prefixSums = prefixSums;
+    this.start = start;
+    this.end = end;
+  }
+
+  /**
+   * @param times distinct times in increasing order
+   * @param counts the count at each time
+   */
+  public TimeSeries(int[] times, long[] counts) {
+    if (times.length != counts.length) {
+      throw new IllegalArgumentException("Expected a count for every time");
+    }
+    this.times = times.clone();
+    this.prefixSums = new long[times.length + 1];
+    for (int i = 0; i < times.length; i++) {
+      if (i > 0 && times[i] <= times[i - 1]) {
+        throw new IllegalArgumentException("Times are not increasing at " + times[i]);
+      }
+      prefixSums[i + 1] = prefixSums[i] + counts[i];
+    }
+    this.start = 0;
+    this.end = times.length;
+  }
+
+  /**
+   * Makes a series from rows of times and counts in any order, e.g. the columns of a
+   * CsvTable. Counts for the same time are added together.
+   */
+  public static TimeSeries fromRows(int[] rowTimes, int[] rowCounts) {
+    if (rowTimes.length != rowCounts.length) {
+      throw new IllegalArgumentException("Expected a count for every time");
+    }
+    long[] rows = new long[rowTimes.length];
+    for (int i = 0; i < rows.length; i++) {
+      // sorting the packed rows orders them by time
+      rows[i] = ((long) rowTimes[i] << 32) | (rowCounts[i] & 0xFFFFFFFFL);
+    }
+    Arrays.sort(rows);
+
+    int[] times = new int[rows.length];
+    long[] counts = new long[rows.length];
+    int distinct = 0;
+    for (long row : rows) {
+      int time = (int) (row >> 32);
+      int count = (int) row;
+      if (distinct > 0 && times[distinct - 1] == time) {
+        counts[distinct - 1] += count;
+      } else {
+        times[distinct] = time;
+        counts[distinct] = count;
+        distinct++;
+      }
+    }
+    return new TimeSeries(Arrays.copyOf(times, distinct), Arrays.copyOf(counts, distinct));
+  }
+
+  public int size() {
+    return end - start;
+  }
+
+  public int getTime(int index) {
+    return times[start + index];
+  }
+
+  public long getCount(int index) {
+    return prefixSums[start + index + 1] - prefixSums[start + index];
+  }
+
+  /** @return the sum of the counts at times from from to to, inclusive */
+  public long sum(int from, int to) {
+    return prefixSums[lowerBound(to, true)] - prefixSums[lowerBound(from, false)];
+  }
+
+  /** @return the part of this series at times from from to to, inclusive */
+  public TimeSeries range(int from, int to) {
+    int rangeStart = lowerBound(from, false);
+    int rangeEnd = Math.max(rangeStart, lowerBound(to, true));
+    return new TimeSeries(times, prefixSums, rangeStart, rangeEnd);
+  }
+
+  /**
+   * Adds up the counts in buckets of width units of time, starting at multiples of width,
+   * e.g. decades of a series of years with a width of 10. Buckets between the first and
+   * last times with no counts are included with a count of 0.
+   *
+   * @return a series with the first time of each bucket and its total
+   */
+  public TimeSeries rollup(int width) {
+    if (width <= 0) {
+      throw new IllegalArgumentException("Bucket width must be positive: " + width);
+    }
+    if (size() == 0) {
+      return this;
+    }
+    long firstBucket = Math.floorDiv(times[start], width);
+    long lastBucket = Math.floorDiv(times[end - 1], width);
+    int buckets = (int) (lastBucket - firstBucket + 1);
+    int[] bucketTimes = new int[buckets];
+    long[] bucketCounts = new long[buckets];
+    for (int i = 0; i < buckets; i++) {
+      long bucketStart = (firstBucket + i) * width;
+      bucketTimes[i] = (int) Math.max(bucketStart, Integer.MIN_VALUE);
+      bucketCounts[i] =
+          sum(bucketTimes[i], (int) Math.min(bucketStart + width - 1, Integer.MAX_VALUE));
+    }
+    return new TimeSeries(bucketTimes, bucketCounts);
+  }
+
+  /**
+   * @return the index into the arrays of the first time in this series that is at least
+   *     time, or greater than time if after is true
+   */
+  private int lowerBound(int time, boolean after) {
+    int low = start;
+    int high = end;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (times[mid] < time || (after && times[mid] == time)) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+}
@@ -14,42 +14,101 @@
 
 package com.google.sps.servlets;
 
-import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
+import com.google.sps.data.CsvDataset;
+import com.google.sps.data.CsvTable;
+import com.google.sps.data.TimeSeries;
 import java.io.IOException;
-import java.util.LinkedHashMap;
-import java.util.Scanner;
+import java.io.InputStream;
+import java.nio.file.Paths;
+import javax.servlet.ServletException;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
-/** Returns bigfoot data as a JSON object, e.g. {"2017": 52, "2018": 34}] */
+/**
+ * Returns bigfoot data as a JSON object, e.g. {"2017": 52, "2018": 34}
+ *
+ * <p>/bigfoot-data?from=1960&to=1999&bucket=decade returns the years from 1960 to 1999
+ * inclusive, added up by decade. Both ends are optional, and bucket can be year or decade.
+ *
+ * <p>The data comes from the file named by the bigfoot.data.path system property, or else
+ * the CSV in WEB-INF, and is loaded again when the file changes.
+ */
 @WebServlet("/bigfoot-data")
 public class BigfootDataServlet extends HttpServlet {
 
-  private LinkedHashMap<Integer, Integer> bigfootSightings = new LinkedHashMap<>();
+  private static final String DATA_PATH_PROPERTY = "bigfoot.data.path";
+  private static final String CSV_PATH = "/WEB-INF/bigfoot-sightings-by-year.csv";
 
-  @Override
-  public void init() {
-    Scanner scanner = new Scanner(getServletContext().getResourceAsStream(
-        "/WEB-INF/bigfoot-sightings-by-year.csv"));
-    while (scanner.hasNextLine()) {
-      String line = scanner.nextLine();
-      String[] cells = line.split(",");
+  private CsvDataset<TimeSeries> bigfootSightings;
 
-      Integer year = Integer.valueOf(cells[0]);
-      Integer sightings = Integer.valueOf(cells[1]);
+  @Override
+  public void init() throws ServletException {
+    String dataPath = System.getProperty(DATA_PATH_PROPERTY);
+    if (dataPath == null) {
+      dataPath = getServletContext().getRealPath(CSV_PATH);
+    }
+    try {
+      if (dataPath != null) {
+        bigfootSightings = CsvDataset.watch(Paths.get(dataPath), BigfootDataServlet::toTimeSeries,
+            CsvTable.Type.INT, CsvTable.Type.INT);
+      } else {
+        // a packed WAR has no file to watch
+        try (InputStream in = getServletContext().getResourceAsStream(CSV_PATH)) {
+          bigfootSightings = CsvDataset.read(CSV_PATH, in, BigfootDataServlet::toTimeSeries,
+              CsvTable.Type.INT, CsvTable.Type.INT);
+        }
+      }
+    } catch (IOException | RuntimeException e) {
+      throw new ServletException("Could not load bigfoot sightings", e);
+    }
+  }
 
-      bigfootSightings.put(year, sightings);
+  @Override
+  public void destroy() {
+    try {
+      bigfootSightings.close();
+    } catch (IOException e) {
+      getServletContext().log("Could not stop watching bigfoot sightings", e);
     }
-    scanner.close();
   }
 
   @Override
   public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    TimeSeries sightings = bigfootSightings.get();
+    try {
+      String from = request.getParameter("from");
+      String to = request.getParameter("to");
+      if (from != null || to != null) {
+        sightings = sightings.range(
+            from != null ? Integer.parseInt(from) : Integer.MIN_VALUE,
+            to != null ? Integer.parseInt(to) : Integer.MAX_VALUE);
+      }
+    } catch (NumberFormatException e) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Expected numeric from and to");
+      return;
+    }
+    String bucket = request.getParameter("bucket");
+    if ("decade".equals(bucket)) {
+      sightings = sightings.rollup(10);
+    } else if (bucket != null && !bucket.equals("year")) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Expected bucket=year or decade");
+      return;
+    }
+
     response.setContentType("application/json");
-    Gson gson = new Gson();
-    String json = gson.toJson(bigfootSightings);
-    response.getWriter().println(json);
+    JsonWriter writer = new JsonWriter(response.getWriter());
+    writer.beginObject();
+    for (int i = 0; i < sightings.size(); i++) {
+      writer.name(Integer.toString(sightings.getTime(i))).value(sightings.getCount(i));
+    }
+    writer.endObject();
+    writer.flush();
+  }
+
+  private static TimeSeries toTimeSeries(CsvTable table) {
+    return TimeSeries.fromRows(table.getInts(0), table.getInts(1));
   }
 }
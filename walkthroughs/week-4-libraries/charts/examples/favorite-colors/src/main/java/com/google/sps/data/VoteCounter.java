@@ -0,0 +1,177 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import com.google.appengine.api.datastore.DatastoreFailureException;
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.DatastoreTimeoutException;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.EntityNotFoundException;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.Transaction;
+import java.util.ConcurrentModificationException;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts votes for named choices in memory and adds them to Datastore every FLUSH_MILLIS.
+ *
+ * <p>Each choice's votes go to a LongAdder, which spreads updates from many threads over
+ * separate cells, so even thousands of votes a second for one choice do not contend. A
+ * choice's total in Datastore is read when the counter is created and whenever this
+ * instance flushes votes for it, and its count is that total plus the votes this instance
+ * has not flushed yet. Flushing happens
+ * on the request thread that votes first once a flush is due, since App Engine threads do
+ * not outlive their request.
+ */
+public final class VoteCounter {
+
+  /** How often votes are added to Datastore. */
+  private static final long FLUSH_MILLIS = 5000;
+
+  /** Most choices that can be voted for, so arbitrary names cannot fill memory. */
+  private static final int MAX_CHOICES = 1000;
+
+  private final String kind;
+  private final Map<String, Choice> choices = new ConcurrentHashMap<>();
+  private final AtomicLong nextFlushAt = new AtomicLong();
+
+  /** Loads the totals stored as entities of the given kind, keyed by choice. */
+  public VoteCounter(String kind) {
+    this.kind = kind;
+    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+    for (Entity entity : datastore.prepare(new Query(kind)).asIterable()) {
+      Choice choice = new Choice();
+      choice.persisted = new Persisted((long) entity.getProperty("count"), 0);
+      choices.put(entity.getKey().getName(), choice);
+    }
+    nextFlushAt.set(System.currentTimeMillis() + FLUSH_MILLIS);
+  }
+
+  /**
+   * Counts a vote, and adds all unflushed votes to Datastore if a flush is due.
+   *
+   * @return false if there are already MAX_CHOICES choices and this is a new one
+   */
+  public boolean vote(String name) {
+    Choice choice = choices.get(name);
+    if (choice == null) {
+      if (choices.size() >= MAX_CHOICES) {
+        return false;
+      }
+      choice = choices.computeIfAbsent(name, key -> new Choice());
+    }
+    choice.votes.increment();
+
+    long flushAt = nextFlushAt.get();
+    long now = System.currentTimeMillis();
+    // only the thread that moves the time forward flushes
+    if (now >= flushAt && nextFlushAt.compareAndSet(flushAt, now + FLUSH_MILLIS)) {
+      flush();
+    }
+    return true;
+  }
+
+  /**
+   * @return the count for each choice, sorted by name; each count is read at once, but
+   *     votes arriving meanwhile may be counted for some choices and not others
+   */
+  public SortedMap<String, Long> snapshot() {
+    SortedMap<String, Long> counts = new TreeMap<>();
+    for (Map.Entry<String, Choice> choice : choices.entrySet()) {
+      counts.put(choice.getKey(), choice.getValue().count());
+    }
+    return counts;
+  }
+
+  /**
+   * Adds the votes counted since the last flush to Datastore, one transaction per choice.
+   * Votes for a choice whose transaction fails are kept for the next flush, so a Datastore
+   * error never fails the vote that triggered the flush.
+   */
+  public synchronized void flush() {
+    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+    for (Map.Entry<String, Choice> entry : choices.entrySet()) {
+      Choice choice = entry.getValue();
+      long votes = choice.votes.sum();
+      long unflushed = votes - choice.persisted.flushed;
+      if (unflushed == 0) {
+        continue;
+      }
+
+      Key key = KeyFactory.createKey(kind, entry.getKey());
+      Transaction txn = null;
+      try {
+        txn = datastore.beginTransaction();
+        Entity entity;
+        try {
+          entity = datastore.get(txn, key);
+        } catch (EntityNotFoundException e) {
+          entity = new Entity(key);
+          entity.setUnindexedProperty("count", 0L);
+        }
+        long stored = (long) entity.getProperty("count") + unflushed;
+        entity.setUnindexedProperty("count", stored);
+        datastore.put(txn, entity);
+        txn.commit();
+        choice.persisted = new Persisted(stored, votes);
+      } catch (ConcurrentModificationException e) {
+        // another instance flushed this choice at the same time; try again next flush
+      } catch (DatastoreFailureException | DatastoreTimeoutException e) {
+        // try again next flush
+      } finally {
+        if (txn != null && txn.isActive()) {
+          try {
+            txn.rollback();
+          } catch (DatastoreFailureException | DatastoreTimeoutException e) {
+            // the transaction expires by itself
+          }
+        }
+      }
+    }
+  }
+
+  /** The votes for one choice. */
+  private static final class Choice {
+    /** Every vote this instance has counted. */
+    private final LongAdder votes = new LongAdder();
+
+    /** What was last read from Datastore; replaced as a whole so reads are consistent. */
+    private volatile Persisted persisted = new Persisted(0, 0);
+
+    private long count() {
+      Persisted current = persisted;
+      return current.stored + votes.sum() - current.flushed;
+    }
+  }
+
+  /** The total stored in Datastore, and how many of this instance's votes it includes. */
+  private static final class Persisted {
+    private final long stored;
+    private final long flushed;
+
+    private Persisted(long stored, long flushed) {
+      this.stored = stored;
+      this.flushed = flushed;
+    }
+  }
+}
@@ -15,34 +15,51 @@
 package com.google.sps.servlets;
 
 import com.google.gson.Gson;
+import com.google.sps.data.VoteCounter;
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Scanner;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
-
+/**
+ * Counts votes for favorite colors and returns them as a JSON object, e.g.
+ * {"Blue": 12, "Red": 7}. Votes are saved to Datastore every few seconds.
+ */
 @WebServlet("/color-data")
 public class ColorDataServlet extends HttpServlet {
 
-  private Map<String, Integer> colorVotes = new HashMap<>();
+  /** Longest color name that can be voted for. */
+  private static final int MAX_COLOR_LENGTH = 50;
+
+  private VoteCounter colorVotes;
+
+  @Override
+  public void init() {
+    colorVotes = new VoteCounter("ColorVotes");
+  }
+
+  @Override
+  public void destroy() {
+    colorVotes.flush();
+  }
 
   @Override
   public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
     response.setContentType("application/json");
     Gson gson = new Gson();
-    String json = gson.toJson(colorVotes);
+    String json = gson.toJson(colorVotes.snapshot());
     response.getWriter().println(json);
   }
 
   @Override
   public void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
     String color = request.getParameter("color");
-    int currentVotes = colorVotes.containsKey(color) ? colorVotes.get(color) : 0;
-    colorVotes.put(color, currentVotes + 1);
+    if (color == null || color.isEmpty() || color.length() > MAX_COLOR_LENGTH
+        || !colorVotes.vote(color)) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid color");
+      return;
+    }
 
     response.sendRedirect("/index.html");
   }
@@ -0,0 +1,218 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+// A copy of this file is kept in week-4-libraries/charts/examples/bigfoot-sightings, since each
+// example is built on its own. Make every change to both copies.
+
+package com.google.sps.data;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Data built from a CSV file that is loaded again whenever the file changes.
+ *
+ * <p>A daemon thread watches the file's directory, waits for the file to stop changing, and
+ * then parses it into a CsvTable and builds the data from that. The new version replaces the
+ * old one all at once, so readers see one or the other. If it fails to load, the old version
+ * is kept. Replacing the file by renaming a new one over it avoids reading it half written.
+ *
+ * <p>The thread only ever reads the local file, never works on a request, and stops when the
+ * dataset is closed. App Engine does not let a thread outlive the request that started it,
+ * and a deployed file never changes anyway, so there the file is loaded once instead.
+ */
+public final class CsvDataset<T> implements Closeable {
+
+  private static final Logger logger = Logger.getLogger(CsvDataset.class.getName());
+
+  /** Whether this is running on App Engine rather than the development server. */
+  private static final boolean ON_APP_ENGINE =
+      "Production".equals(System.getProperty("com.google.appengine.runtime.environment"));
+
+  /** How long a file has to go without changes before it is loaded again. */
+  private static final long SETTLE_MILLIS = 500;
+
+  private final String name;
+  private final Function<CsvTable, T> builder;
+  private final CsvTable.Type[] types;
+
+  private volatile Version<T> current;
+  private WatchService watchService;
+
+  private CsvDataset(String name, Function<CsvTable, T> builder, CsvTable.Type[] types) {
+    this.name = name;
+    this.builder = builder;
+    this.types = types;
+  }
+
+  /**
+   * Loads a CSV file and starts watching it for changes, except on App Engine.
+   *
+   * @param builder makes the data from the parsed file; it may throw
+   *     IllegalArgumentException if the file is not valid
+   */
+  public static <T> CsvDataset<T> watch(
+      Path path, Function<CsvTable, T> builder, CsvTable.Type... types) throws IOException {
+    CsvDataset<T> dataset = new CsvDataset<>(path.toString(), builder, types);
+    dataset.current = dataset.load(() -> CsvTable.map(path, types));
+    dataset.startWatching(path.toAbsolutePath());
+    return dataset;
+  }
+
+  /** Loads a CSV from a stream, e.g. a resource in a packed WAR, which never changes. */
+  public static <T> CsvDataset<T> read(String name, InputStream in,
+      Function<CsvTable, T> builder, CsvTable.Type... types) throws IOException {
+    CsvDataset<T> dataset = new CsvDataset<>(name, builder, types);
+    dataset.current = dataset.load(() -> CsvTable.read(in, types));
+    return dataset;
+  }
+
+  /** @return the latest version of the data */
+  public T get() {
+    return current.getData();
+  }
+
+  /** @return the latest version of the data and how loading it went */
+  public Version<T> getVersion() {
+    return current;
+  }
+
+  /** Stops watching the file. */
+  @Override
+  public synchronized void close() throws IOException {
+    if (watchService != null) {
+      watchService.close();
+    }
+  }
+
+  private Version<T> load(TableSource source) throws IOException {
+    long start = System.nanoTime();
+    CsvTable table = source.parse();
+    T data = builder.apply(table);
+    Version<T> version = new Version<>(data, table.getRowCount(), table.getSkippedRows(),
+        (System.nanoTime() - start) / 1_000_000);
+    String skipped = table.getSkippedRows() == 0 ? ""
+        : String.format(", skipped %d rows starting on line %d",
+            table.getSkippedRows(), table.getFirstSkippedLine());
+    logger.info(String.format("Loaded %d rows of %s in %d ms%s",
+        table.getRowCount(), name, version.getLoadMillis(), skipped));
+    return version;
+  }
+
+  /** Starts a thread that loads the file again whenever it changes. */
+  private synchronized void startWatching(Path path) {
+    if (ON_APP_ENGINE) {
+      return;
+    }
+    try {
+      watchService = path.getFileSystem().newWatchService();
+      path.getParent().register(watchService,
+          StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+    } catch (IOException | UnsupportedOperationException e) {
+      logger.log(Level.WARNING, "Not watching " + name + " for changes", e);
+      return;
+    }
+    Thread watcher = new Thread(() -> watchForChanges(path), "CsvDataset " + path.getFileName());
+    watcher.setDaemon(true);
+    watcher.start();
+  }
+
+  private void watchForChanges(Path path) {
+    try {
+      while (true) {
+        WatchKey key = watchService.take();
+        boolean changed = false;
+        // writing a file can take many events, so wait until they stop
+        do {
+          for (WatchEvent<?> event : key.pollEvents()) {
+            changed |= event.kind() == StandardWatchEventKinds.OVERFLOW
+                || path.getFileName().equals(event.context());
+          }
+          key.reset();
+          key = watchService.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS);
+        } while (key != null);
+
+        if (changed) {
+          reload(path);
+        }
+      }
+    } catch (InterruptedException | ClosedWatchServiceException e) {
+      // closed
+    }
+  }
+
+  private void reload(Path path) {
+    try {
+      current = load(() -> CsvTable.map(path, types));
+    } catch (IOException | RuntimeException | InternalError e) {
+      // an InternalError means the file was cut short while it was mapped
+      logger.log(Level.WARNING, "Keeping the previous version of " + name, e);
+    }
+  }
+
+  /** Parses a CSV into a table. */
+  private interface TableSource {
+    CsvTable parse() throws IOException;
+  }
+
+  /** One version of the data. */
+  public static final class Version<T> {
+    private final T data;
+    private final int rowCount;
+    private final int skippedRows;
+    private final long loadMillis;
+    private final long loadedAt = System.currentTimeMillis();
+
+    private Version(T data, int rowCount, int skippedRows, long loadMillis) {
+      this.data = data;
+      this.rowCount = rowCount;
+      this.skippedRows = skippedRows;
+      this.loadMillis = loadMillis;
+    }
+
+    public T getData() {
+      return data;
+    }
+
+    public int getRowCount() {
+      return rowCount;
+    }
+
+    /** @return the number of rows that were skipped because they did not parse */
+    public int getSkippedRows() {
+      return skippedRows;
+    }
+
+    /** @return how long it took to parse the file and build the data */
+    public long getLoadMillis() {
+      return loadMillis;
+    }
+
+    /** @return when this version was loaded, in milliseconds since the epoch */
+    public long getLoadedAt() {
+      return loadedAt;
+    }
+  }
+}
@@ -0,0 +1,191 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Counts of UFO sightings in a grid of cells over a Web Mercator map, for every zoom level
+ * up to MAX_ZOOM.
+ *
+ * <p>A cell covers CELL_PIXELS by CELL_PIXELS on screen at its zoom level. Each level keeps
+ * its occupied cells sorted by their Morton code, which interleaves the bits of the cell's
+ * x and y, so the four cells of one level that share a parent at the level above are next
+ * to each other. The finest level is computed in parallel and each coarser one is made by
+ * merging runs of the one below, so all are built at load time and queries only look up
+ * cells in the view.
+ */
+public final class UfoHeatmap {
+
+  /** Deepest zoom level with its own grid; deeper zooms use this one. */
+  public static final int MAX_ZOOM = 10;
+
+  /** Width of a cell in pixels at its zoom level. */
+  private static final int CELL_PIXELS = 32;
+
+  /** Number of cells across one 256 pixel map tile, as a power of two. */
+  private static final int CELLS_PER_TILE_BITS = Integer.numberOfTrailingZeros(256 / CELL_PIXELS);
+
+  /** Latitudes beyond this are off the edge of a Web Mercator map. */
+  private static final double MAX_LAT = 85.05112878;
+
+  /** A binary search costs about as much as scanning this many cells. */
+  private static final int SEARCH_COST = 20;
+
+  private final int[][] keys = new int[MAX_ZOOM + 1][];
+  private final int[][] counts = new int[MAX_ZOOM + 1][];
+
+  public UfoHeatmap(UfoSightingIndex sightings) {
+    int side = side(MAX_ZOOM);
+    int[] finest = IntStream.range(0, sightings.size()).parallel()
+        .map(i -> mortonCode(cellX(sightings.getLng(i), side), cellY(sightings.getLat(i), side)))
+        .toArray();
+    Arrays.parallelSort(finest);
+    int[] ones = new int[finest.length];
+    Arrays.fill(ones, 1);
+    merge(MAX_ZOOM, finest, ones, 0);
+    for (int zoom = MAX_ZOOM - 1; zoom >= 0; zoom--) {
+      merge(zoom, keys[zoom + 1], counts[zoom + 1], 2);
+    }
+  }
+
+  /**
+   * Stores the cells of a zoom level, made by shifting the Morton codes of sorted cells
+   * right and adding up the counts of cells that end up equal.
+   */
+  private void merge(int zoom, int[] sortedKeys, int[] sortedCounts, int shift) {
+    int[] levelKeys = new int[sortedKeys.length];
+    int[] levelCounts = new int[sortedKeys.length];
+    int size = 0;
+    for (int i = 0; i < sortedKeys.length; i++) {
+      int key = sortedKeys[i] >>> shift;
+      if (size > 0 && levelKeys[size - 1] == key) {
+        levelCounts[size - 1] += sortedCounts[i];
+      } else {
+        levelKeys[size] = key;
+        levelCounts[size] = sortedCounts[i];
+        size++;
+      }
+    }
+    keys[zoom] = Arrays.copyOf(levelKeys, size);
+    counts[zoom] = Arrays.copyOf(levelCounts, size);
+  }
+
+  /**
+   * Finds the occupied cells of a zoom level that overlap a box. If west is greater than
+   * east, the box crosses the antimeridian.
+   *
+   * @param zoom a zoom level from 0 to MAX_ZOOM
+   * @return positions of the cells, for getCellLat, getCellLng and getCount
+   */
+  public int[] query(int zoom, double south, double west, double north, double east) {
+    int side = side(zoom);
+    int top = cellY(north, side);
+    int bottom = cellY(south, side);
+    int left = cellX(west, side);
+    int right = cellX(east, side);
+    boolean wraps = west > east;
+    long width = Math.min(side, wraps ? side - left + right + 1 : right - left + 1);
+    if (top > bottom) {
+      return new int[0];
+    }
+    long boxCells = width * (bottom - top + 1);
+
+    int[] levelKeys = keys[zoom];
+    int[] found = new int[(int) Math.min(boxCells, levelKeys.length)];
+    int size = 0;
+    if (boxCells * SEARCH_COST >= levelKeys.length) {
+      for (int i = 0; i < levelKeys.length; i++) {
+        int x = compact(levelKeys[i]);
+        int y = compact(levelKeys[i] >>> 1);
+        boolean inColumns = wraps ? x >= left || x <= right : x >= left && x <= right;
+        if (inColumns && y >= top && y <= bottom) {
+          found[size++] = i;
+        }
+      }
+    } else {
+      for (int y = top; y <= bottom; y++) {
+        for (long column = 0; column < width; column++) {
+          int x = (int) ((left + column) % side);
+          int i = Arrays.binarySearch(levelKeys, mortonCode(x, y));
+          if (i >= 0) {
+            found[size++] = i;
+          }
+        }
+      }
+    }
+    return Arrays.copyOf(found, size);
+  }
+
+  /** @return the latitude of the center of a cell returned by query */
+  public double getCellLat(int zoom, int position) {
+    int side = side(zoom);
+    double y = compact(keys[zoom][position] >>> 1) + 0.5;
+    return Math.toDegrees(Math.atan(Math.sinh(Math.PI * (1 - 2 * y / side))));
+  }
+
+  /** @return the longitude of the center of a cell returned by query */
+  public double getCellLng(int zoom, int position) {
+    double x = compact(keys[zoom][position]) + 0.5;
+    return x / side(zoom) * 360 - 180;
+  }
+
+  /** @return the number of sightings in a cell returned by query */
+  public int getCount(int zoom, int position) {
+    return counts[zoom][position];
+  }
+
+  /** @return the number of cells across the whole map at a zoom level */
+  private static int side(int zoom) {
+    return 1 << (zoom + CELLS_PER_TILE_BITS);
+  }
+
+  private static int cellX(double lng, int side) {
+    int x = (int) Math.floor((lng + 180) / 360 * side);
+    return Math.max(0, Math.min(side - 1, x));
+  }
+
+  private static int cellY(double lat, int side) {
+    double sinLat = Math.sin(Math.toRadians(Math.max(-MAX_LAT, Math.min(MAX_LAT, lat))));
+    double y = (0.5 - Math.log((1 + sinLat) / (1 - sinLat)) / (4 * Math.PI)) * side;
+    return Math.max(0, Math.min(side - 1, (int) Math.floor(y)));
+  }
+
+  /** @return x and y interleaved, with x in the even bits */
+  private static int mortonCode(int x, int y) {
+    return spread(x) | (spread(y) << 1);
+  }
+
+  /** @return the low 16 bits of value moved to the even bits */
+  private static int spread(int value) {
+    value &= 0x0000FFFF;
+    value = (value | (value << 8)) & 0x00FF00FF;
+    value = (value | (value << 4)) & 0x0F0F0F0F;
+    value = (value | (value << 2)) & 0x33333333;
+    value = (value | (value << 1)) & 0x55555555;
+    return value;
+  }
+
+  /** @return the even bits of value packed into the low 16 bits */
+  private static int compact(int value) {
+    value &= 0x55555555;
+    value = (value | (value >>> 1)) & 0x33333333;
+    value = (value | (value >>> 2)) & 0x0F0F0F0F;
+    value = (value | (value >>> 4)) & 0x00FF00FF;
+    value = (value | (value >>> 8)) & 0x0000FFFF;
+    return value;
+  }
+}
@@ -0,0 +1,109 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import com.google.gson.stream.JsonWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes UFO sightings from a UfoSightingIndex as JSON or in a compact binary format.
+ *
+ * <p>The binary format is a varint count followed by each sighting's latitude and
+ * longitude as fixed-point degrees times 10^7, the precision of the dataset. Each value is
+ * stored as its difference from the previous sighting's, zigzag encoded so small negative
+ * differences stay small, in a little-endian base 128 varint.
+ */
+public final class UfoSightingEncoding {
+
+  /** Content type of the binary format. */
+  public static final String BINARY_TYPE = "application/x-ufo-sightings";
+
+  private static final double FIXED_POINT_SCALE = 1e7;
+
+  private UfoSightingEncoding() {}
+
+  /** Writes the sightings as a JSON array, e.g. [{"lat": 38.4404675, "lng": -122.7144313}]. */
+  public static void writeJson(UfoSightingIndex index, int[] sightings, OutputStream out)
+      throws IOException {
+    Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+    JsonWriter json = new JsonWriter(writer);
+    json.beginArray();
+    for (int i : sightings) {
+      json.beginObject();
+      json.name("lat").value(index.getLat(i));
+      json.name("lng").value(index.getLng(i));
+      json.endObject();
+    }
+    json.endArray();
+    json.flush();
+  }
+
+  /** Writes the sightings in the binary format. */
+  public static void writeBinary(UfoSightingIndex index, int[] sightings, OutputStream out)
+      throws IOException {
+    writeVarint(out, sightings.length);
+    long previousLat = 0;
+    long previousLng = 0;
+    for (int i : sightings) {
+      long lat = Math.round(index.getLat(i) * FIXED_POINT_SCALE);
+      long lng = Math.round(index.getLng(i) * FIXED_POINT_SCALE);
+      writeVarint(out, zigzag(lat - previousLat));
+      writeVarint(out, zigzag(lng - previousLng));
+      previousLat = lat;
+      previousLng = lng;
+    }
+    out.flush();
+  }
+
+  /** @return the sightings as JSON bytes */
+  public static byte[] toJson(UfoSightingIndex index, int[] sightings) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    writeJson(index, sightings, out);
+    return out.toByteArray();
+  }
+
+  /** @return the sightings in the binary format */
+  public static byte[] toBinary(UfoSightingIndex index, int[] sightings) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    writeBinary(index, sightings, out);
+    return out.toByteArray();
+  }
+
+  public static byte[] gzip(byte[] bytes) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+      gzip.write(bytes);
+    }
+    return out.toByteArray();
+  }
+
+  private static long zigzag(long value) {
+    return (value << 1) ^ (value >> 63);
+  }
+
+  private static void writeVarint(OutputStream out, long value) throws IOException {
+    while ((value & ~0x7FL) != 0) {
+      out.write((int) (value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    out.write((int) value);
+  }
+}
@@ -0,0 +1,172 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A KD-tree over UFO sightings for finding the ones inside a bounding box.
+ *
+ * <p>The tree is implicit: the sightings are reordered so each range's middle sighting
+ * splits the rest by latitude, then by longitude, alternating with depth. Queries visit
+ * the tree breadth first, and the shallow levels are spread evenly over the map, so when a
+ * box holds more sightings than the limit the ones returned are an even sample of it.
+ * Zoomed out, the sample is sparse; zoomed in far enough, it is every sighting.
+ */
+public final class UfoSightingIndex {
+
+  private final double[] lats;
+  private final double[] lngs;
+
+  /** Indexes sightings with the given coordinates, which are copied. */
+  public UfoSightingIndex(double[] lats, double[] lngs) {
+    if (lats.length != lngs.length) {
+      throw new IllegalArgumentException("Expected a longitude for every latitude");
+    }
+    this.lats = lats.clone();
+    this.lngs = lngs.clone();
+    build(0, lats.length, 0);
+  }
+
+  public int size() {
+    return lats.length;
+  }
+
+  public double getLat(int index) {
+    return lats[index];
+  }
+
+  public double getLng(int index) {
+    return lngs[index];
+  }
+
+  /**
+   * Finds the sightings inside a box. If west is greater than east, the box crosses the
+   * antimeridian.
+   *
+   * @return the indexes of at most limit sightings, spread evenly over the box, in
+   *     increasing order so that sightings next to each other tend to be close on the map
+   */
+  public int[] query(double south, double west, double north, double east, int limit) {
+    boolean wraps = west > east;
+    int[] results = new int[Math.max(0, Math.min(limit, size()))];
+    int count = 0;
+
+    // lo, hi pairs of the subtrees on the current level that may overlap the box
+    int[] level = {0, size()};
+    int levelSize = size() > 0 ? 1 : 0;
+    for (int depth = 0; levelSize > 0 && count < results.length; depth++) {
+      boolean byLat = depth % 2 == 0;
+      int[] matches = new int[levelSize];
+      int matchCount = 0;
+      int[] next = new int[levelSize * 4];
+      int nextSize = 0;
+      for (int node = 0; node < levelSize; node++) {
+        int lo = level[2 * node];
+        int hi = level[2 * node + 1];
+        int mid = (lo + hi) >>> 1;
+        double lat = lats[mid];
+        double lng = lngs[mid];
+        if (lat >= south && lat <= north
+            && (wraps ? lng >= west || lng <= east : lng >= west && lng <= east)) {
+          matches[matchCount++] = mid;
+        }
+
+        double split = byLat ? lat : lng;
+        boolean searchLow = byLat ? south <= split : wraps || west <= split;
+        boolean searchHigh = byLat ? north >= split : wraps || east >= split;
+        if (searchLow && lo < mid) {
+          next[2 * nextSize] = lo;
+          next[2 * nextSize + 1] = mid;
+          nextSize++;
+        }
+        if (searchHigh && mid + 1 < hi) {
+          next[2 * nextSize] = mid + 1;
+          next[2 * nextSize + 1] = hi;
+          nextSize++;
+        }
+      }
+
+      int room = results.length - count;
+      if (matchCount <= room) {
+        System.arraycopy(matches, 0, results, count, matchCount);
+        count += matchCount;
+      } else {
+        // take evenly spaced matches so the last level does not favor one side of the box
+        for (int i = 0; i < room; i++) {
+          results[count++] = matches[(int) ((long) i * matchCount / room)];
+        }
+      }
+      level = next;
+      levelSize = nextSize;
+    }
+    int[] found = count == results.length ? results : Arrays.copyOf(results, count);
+    Arrays.sort(found);
+    return found;
+  }
+
+  /** Arranges [lo, hi) into a subtree whose root splits by latitude at even depths. */
+  private void build(int lo, int hi, int depth) {
+    if (hi - lo <= 1) {
+      return;
+    }
+    int mid = (lo + hi) >>> 1;
+    select(lo, hi, mid, depth % 2 == 0 ? lats : lngs);
+    build(lo, mid, depth + 1);
+    build(mid + 1, hi, depth + 1);
+  }
+
+  /**
+   * Moves the sighting with the kth smallest key in [lo, hi) to k, with smaller or equal
+   * keys before it and greater or equal keys after it. Partitions three ways, since many
+   * sightings share the coordinates of a town.
+   */
+  private void select(int lo, int hi, int k, double[] keys) {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    while (hi - lo > 1) {
+      double pivot = keys[random.nextInt(lo, hi)];
+      // [lo, less) < pivot, [less, i) == pivot, [greater, hi) > pivot
+      int less = lo;
+      int greater = hi;
+      int i = lo;
+      while (i < greater) {
+        if (keys[i] < pivot) {
+          swap(less++, i++);
+        } else if (keys[i] > pivot) {
+          swap(i, --greater);
+        } else {
+          i++;
+        }
+      }
+      if (k < less) {
+        hi = less;
+      } else if (k >= greater) {
+        lo = greater;
+      } else {
+        return;
+      }
+    }
+  }
+
+  private void swap(int i, int j) {
+    double lat = lats[i];
+    lats[i] = lats[j];
+    lats[j] = lat;
+    double lng = lngs[i];
+    lngs[i] = lngs[j];
+    lngs[j] = lng;
+  }
+}
@@ -14,45 +14,127 @@
 
 package com.google.sps.servlets;
 
-import com.google.sps.data.UfoSighting;
-import com.google.gson.Gson;
+import com.google.sps.data.CsvDataset;
+import com.google.sps.data.UfoSightingEncoding;
+import com.google.sps.data.UfoSightingIndex;
+import java.io.BufferedOutputStream;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.Scanner;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.zip.GZIPOutputStream;
+import javax.servlet.ServletException;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
-/** Returns UFO data as a JSON array, e.g. [{"lat": 38.4404675, "lng": -122.7144313}] */
+/**
+ * Returns UFO data as a JSON array, e.g. [{"lat": 38.4404675, "lng": -122.7144313}]
+ *
+ * <p>/ufo-data?bbox=south,west,north,east&limit=n returns the sightings inside the box, as
+ * given by LatLngBounds.toUrlValue(). When there are more than the limit, an even sample
+ * of them is returned. Without a bbox the whole map is searched.
+ *
+ * <p>Clients that accept application/x-ufo-sightings get the binary format described in
+ * UfoSightingEncoding instead, and JSON is gzipped for clients that accept it. The
+ * response without a bbox or limit is encoded once for each version of the data.
+ */
 @WebServlet("/ufo-data")
 public class UfoDataServlet extends HttpServlet {
 
-  private Collection<UfoSighting> ufoSightings;
+  /** Number of sightings returned when the request has no limit. */
+  static final int DEFAULT_LIMIT = 1000;
+
+  /** Largest number of sightings returned by one request. */
+  private static final int MAX_LIMIT = 10000;
+
+  private CsvDataset<UfoDataset> dataset;
+
+  @Override
+  public void init() throws ServletException {
+    dataset = UfoDataset.open(getServletContext());
+  }
 
   @Override
-  public void init() {
-    ufoSightings = new ArrayList<>();
+  public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    UfoDataset ufoData = dataset.get();
+    boolean binary = accepts(request.getHeader("Accept"), UfoSightingEncoding.BINARY_TYPE);
+    // the binary format is already about as small as gzip makes the JSON
+    boolean gzip = !binary && accepts(request.getHeader("Accept-Encoding"), "gzip");
+    response.setHeader("Vary", "Accept, Accept-Encoding");
+
+    String bboxParameter = request.getParameter("bbox");
+    String limitParameter = request.getParameter("limit");
+    if (bboxParameter == null && limitParameter == null) {
+      byte[] body = binary ? ufoData.getDefaultBinary()
+          : gzip ? ufoData.getDefaultGzipJson() : ufoData.getDefaultJson();
+      setContentHeaders(response, binary, gzip);
+      response.setContentLength(body.length);
+      response.getOutputStream().write(body);
+      return;
+    }
+
+    double[] bbox;
+    int limit = DEFAULT_LIMIT;
+    try {
+      bbox = UfoDataset.parseBbox(bboxParameter);
+      if (limitParameter != null) {
+        limit = Math.min(Integer.parseInt(limitParameter), MAX_LIMIT);
+      }
+    } catch (NumberFormatException e) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST,
+          "Expected bbox=south,west,north,east and a numeric limit");
+      return;
+    }
+    if (limit < 1) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Expected a positive limit");
+      return;
+    }
 
-    Scanner scanner = new Scanner(getServletContext().getResourceAsStream("/WEB-INF/ufo-data.csv"));
-    while (scanner.hasNextLine()) {
-      String line = scanner.nextLine();
-      String[] cells = line.split(",");
+    UfoSightingIndex ufoSightings = ufoData.getIndex();
+    int[] matches = ufoSightings.query(bbox[0], bbox[1], bbox[2], bbox[3], limit);
 
-      double lat = Double.parseDouble(cells[0]);
-      double lng = Double.parseDouble(cells[1]);
+    setContentHeaders(response, binary, gzip);
+    OutputStream out = new BufferedOutputStream(response.getOutputStream());
+    if (gzip) {
+      out = new GZIPOutputStream(out);
+    }
+    if (binary) {
+      UfoSightingEncoding.writeBinary(ufoSightings, matches, out);
+    } else {
+      UfoSightingEncoding.writeJson(ufoSightings, matches, out);
+    }
+    out.close();
+  }
 
-      ufoSightings.add(new UfoSighting(lat, lng));
+  private static void setContentHeaders(
+      HttpServletResponse response, boolean binary, boolean gzip) {
+    response.setContentType(binary ? UfoSightingEncoding.BINARY_TYPE : "application/json");
+    if (gzip) {
+      response.setHeader("Content-Encoding", "gzip");
     }
-    scanner.close();
   }
 
-  @Override
-  public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
-    response.setContentType("application/json");
-    Gson gson = new Gson();
-    String json = gson.toJson(ufoSightings);
-    response.getWriter().println(json);
+  /**
+   * @return whether an Accept or Accept-Encoding header lists the value without q=0
+   */
+  private static boolean accepts(String header, String value) {
+    if (header == null) {
+      return false;
+    }
+    for (String item : header.split(",")) {
+      String[] parts = item.split(";");
+      if (!parts[0].trim().equalsIgnoreCase(value)) {
+        continue;
+      }
+      for (int i = 1; i < parts.length; i++) {
+        String parameter = parts[i].trim().toLowerCase(Locale.ROOT);
+        if (parameter.matches("q=0(\\.0*)?")) {
+          return false;
+        }
+      }
+      return true;
+    }
+    return false;
   }
 }
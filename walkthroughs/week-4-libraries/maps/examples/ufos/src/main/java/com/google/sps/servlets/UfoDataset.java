@@ -0,0 +1,144 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.sps.data.CsvDataset;
+import com.google.sps.data.CsvTable;
+import com.google.sps.data.UfoHeatmap;
+import com.google.sps.data.UfoSightingEncoding;
+import com.google.sps.data.UfoSightingIndex;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+
+/**
+ * One version of the UFO sightings shared by the servlets, with everything built from it.
+ *
+ * <p>The sightings come from the file named by the ufo.data.path system property, or else
+ * the CSV in WEB-INF, and are loaded again when the file changes. A CSV in a packed WAR
+ * has no file to watch, so it is loaded once. UfoDatasetListener stops watching the file
+ * when the app shuts down.
+ */
+final class UfoDataset {
+
+  private static final String DATA_PATH_PROPERTY = "ufo.data.path";
+  private static final String CSV_PATH = "/WEB-INF/ufo-data.csv";
+
+  private static CsvDataset<UfoDataset> dataset;
+
+  private final UfoSightingIndex index;
+  private final UfoHeatmap heatmap;
+
+  /** The response to a request without a bbox or limit, in each encoding. */
+  private final byte[] defaultJson;
+  private final byte[] defaultGzipJson;
+  private final byte[] defaultBinary;
+
+  private UfoDataset(CsvTable table) {
+    index = new UfoSightingIndex(table.getDoubles(0), table.getDoubles(1));
+    heatmap = new UfoHeatmap(index);
+
+    int[] defaultMatches = index.query(-90, -180, 90, 180, UfoDataServlet.DEFAULT_LIMIT);
+    try {
+      defaultJson = UfoSightingEncoding.toJson(index, defaultMatches);
+      defaultGzipJson = UfoSightingEncoding.gzip(defaultJson);
+      defaultBinary = UfoSightingEncoding.toBinary(index, defaultMatches);
+    } catch (IOException e) {
+      // only written to memory
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /** @return the shared dataset, loading it on first use */
+  static synchronized CsvDataset<UfoDataset> open(ServletContext context)
+      throws ServletException {
+    if (dataset == null) {
+      String dataPath = System.getProperty(DATA_PATH_PROPERTY);
+      if (dataPath == null) {
+        dataPath = context.getRealPath(CSV_PATH);
+      }
+      try {
+        if (dataPath != null) {
+          dataset = CsvDataset.watch(Paths.get(dataPath), UfoDataset::new,
+              CsvTable.Type.DOUBLE, CsvTable.Type.DOUBLE);
+        } else {
+          try (InputStream in = context.getResourceAsStream(CSV_PATH)) {
+            dataset = CsvDataset.read(CSV_PATH, in, UfoDataset::new,
+                CsvTable.Type.DOUBLE, CsvTable.Type.DOUBLE);
+          }
+        }
+      } catch (IOException | RuntimeException e) {
+        throw new ServletException("Could not load UFO sightings", e);
+      }
+    }
+    return dataset;
+  }
+
+  /** Stops watching the file, so a redeployed app does not leave the watcher running. */
+  static synchronized void close(ServletContext context) {
+    if (dataset == null) {
+      return;
+    }
+    try {
+      dataset.close();
+    } catch (IOException e) {
+      context.log("Could not stop watching UFO sightings", e);
+    }
+    dataset = null;
+  }
+
+  /**
+   * Parses a bbox parameter in the format of LatLngBounds.toUrlValue().
+   *
+   * @return south, west, north and east, or the whole map if the parameter is null
+   * @throws NumberFormatException if the parameter is not four numbers
+   */
+  static double[] parseBbox(String parameter) {
+    double[] bbox = {-90, -180, 90, 180};
+    if (parameter != null) {
+      String[] values = parameter.split(",");
+      if (values.length != 4) {
+        throw new NumberFormatException(parameter);
+      }
+      for (int i = 0; i < 4; i++) {
+        bbox[i] = Double.parseDouble(values[i]);
+      }
+    }
+    return bbox;
+  }
+
+  UfoSightingIndex getIndex() {
+    return index;
+  }
+
+  UfoHeatmap getHeatmap() {
+    return heatmap;
+  }
+
+  byte[] getDefaultJson() {
+    return defaultJson;
+  }
+
+  byte[] getDefaultGzipJson() {
+    return defaultGzipJson;
+  }
+
+  byte[] getDefaultBinary() {
+    return defaultBinary;
+  }
+}
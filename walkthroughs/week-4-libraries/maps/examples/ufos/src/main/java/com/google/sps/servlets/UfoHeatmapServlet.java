@@ -0,0 +1,76 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.gson.stream.JsonWriter;
+import com.google.sps.data.CsvDataset;
+import com.google.sps.data.UfoHeatmap;
+import java.io.IOException;
+import javax.servlet.ServletException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Returns the number of UFO sightings in each cell of a grid over the map as a JSON array,
+ * e.g. [{"lat": 38.4404675, "lng": -122.7144313, "count": 12}], where lat and lng are the
+ * center of the cell.
+ *
+ * <p>/ufo-heatmap?z=zoom&bbox=south,west,north,east returns the cells at the map's zoom
+ * level inside the box, as given by LatLngBounds.toUrlValue(). Zoom levels beyond
+ * UfoHeatmap.MAX_ZOOM use its grid.
+ */
+@WebServlet("/ufo-heatmap")
+public class UfoHeatmapServlet extends HttpServlet {
+
+  private CsvDataset<UfoDataset> dataset;
+
+  @Override
+  public void init() throws ServletException {
+    dataset = UfoDataset.open(getServletContext());
+  }
+
+  @Override
+  public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    int zoom;
+    double[] bbox;
+    try {
+      zoom = Integer.parseInt(request.getParameter("z"));
+      bbox = UfoDataset.parseBbox(request.getParameter("bbox"));
+    } catch (NumberFormatException e) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST,
+          "Expected z=zoom and bbox=south,west,north,east");
+      return;
+    }
+    zoom = Math.max(0, Math.min(UfoHeatmap.MAX_ZOOM, zoom));
+
+    UfoHeatmap heatmap = dataset.get().getHeatmap();
+    int[] cells = heatmap.query(zoom, bbox[0], bbox[1], bbox[2], bbox[3]);
+
+    response.setContentType("application/json");
+    JsonWriter writer = new JsonWriter(response.getWriter());
+    writer.beginArray();
+    for (int cell : cells) {
+      writer.beginObject();
+      writer.name("lat").value(heatmap.getCellLat(zoom, cell));
+      writer.name("lng").value(heatmap.getCellLng(zoom, cell));
+      writer.name("count").value(heatmap.getCount(zoom, cell));
+      writer.endObject();
+    }
+    writer.endArray();
+    writer.flush();
+  }
+}
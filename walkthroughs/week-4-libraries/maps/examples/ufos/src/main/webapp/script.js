@@ -12,16 +12,80 @@
 // See the License for the specific language governing permissions and
 // limitations under the License.
 
-/** Fetches UFO sightings data from the server and displays it in a map. */
+/** Deepest zoom level that shows a heatmap instead of markers. */
+const HEATMAP_MAX_ZOOM = 10;
+
+/**
+ * Creates a map that shows the UFO sightings in view, fetching them from the server
+ * again whenever the map stops moving. Zoomed out, the sightings are shown as a heatmap
+ * of counts from the server; zoomed in, each one gets a marker.
+ */
 function createUfoSightingsMap() {
-  fetch('/ufo-data').then(response => response.json()).then((ufoSightings) => {
-    const map = new google.maps.Map(
-        document.getElementById('map'),
-        {center: {lat: 35.78613674, lng: -119.4491591}, zoom: 7});
+  const map = new google.maps.Map(
+      document.getElementById('map'),
+      {center: {lat: 35.78613674, lng: -119.4491591}, zoom: 7});
 
-    ufoSightings.forEach((ufoSighting) => {
-      new google.maps.Marker(
-          {position: {lat: ufoSighting.lat, lng: ufoSighting.lng}, map: map});
-    });
+  const heatmap = new google.maps.visualization.HeatmapLayer({map: map});
+  let markers = [];
+  map.addListener('idle', () => {
+    const bounds = map.getBounds().toUrlValue();
+    const zoom = map.getZoom();
+    if (zoom <= HEATMAP_MAX_ZOOM) {
+      fetch('/ufo-heatmap?z=' + zoom + '&bbox=' + bounds).then(response => response.json())
+          .then((cells) => {
+            markers.forEach((marker) => marker.setMap(null));
+            markers = [];
+            heatmap.setData(cells.map((cell) => ({
+              location: new google.maps.LatLng(cell.lat, cell.lng),
+              weight: cell.count,
+            })));
+          });
+      return;
+    }
+    fetch('/ufo-data?bbox=' + bounds, {headers: {Accept: 'application/x-ufo-sightings'}})
+        .then(response => response.arrayBuffer()).then(decodeUfoSightings)
+        .then((ufoSightings) => {
+          heatmap.setData([]);
+          markers.forEach((marker) => marker.setMap(null));
+          markers = ufoSightings.map((ufoSighting) => new google.maps.Marker(
+              {position: {lat: ufoSighting.lat, lng: ufoSighting.lng}, map: map}));
+        });
   });
 }
+
+/**
+ * Decodes the binary format written by UfoSightingEncoding: a varint count followed by
+ * zigzag varint differences between the fixed-point coordinates of each sighting.
+ */
+function decodeUfoSightings(buffer) {
+  const bytes = new Uint8Array(buffer);
+  let position = 0;
+
+  // values can be wider than the 32 bits JavaScript's bitwise operators work on
+  const readVarint = () => {
+    let value = 0;
+    let scale = 1;
+    let byte;
+    do {
+      byte = bytes[position++];
+      value += (byte & 0x7f) * scale;
+      scale *= 128;
+    } while (byte & 0x80);
+    return value;
+  };
+  const readDifference = () => {
+    const zigzag = readVarint();
+    return zigzag % 2 === 1 ? -(zigzag + 1) / 2 : zigzag / 2;
+  };
+
+  const count = readVarint();
+  const ufoSightings = [];
+  let lat = 0;
+  let lng = 0;
+  for (let i = 0; i < count; i++) {
+    lat += readDifference();
+    lng += readDifference();
+    ufoSightings.push({lat: lat / 1e7, lng: lng / 1e7});
+  }
+  return ufoSightings;
+}
@@ -0,0 +1,116 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Checks that the byte-level parser reads numbers exactly like Integer and Double do. */
+@RunWith(JUnit4.class)
+public final class CsvTableTest {
+
+  @Test
+  public void decimalsMatchDoubleParseDouble() throws IOException {
+    Random random = new Random(42);
+    List<String> values = new ArrayList<>();
+    String[] fixed = {"0", "-0", "+1.5", ".5", "1.", "0.1", "-122.7144313", "38.4404675",
+        "123456789012345", "1234567890123456789", "0.0000000000000000000001", "1e5", "-2.5E-3",
+        "NaN", "Infinity", "9007199254740993"};
+    for (String value : fixed) {
+      values.add(value);
+    }
+    for (int i = 0; i < 10000; i++) {
+      double value = (random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(8));
+      values.add(String.format(Locale.ROOT, "%." + random.nextInt(17) + "f", value));
+    }
+
+    StringBuilder csv = new StringBuilder();
+    for (String value : values) {
+      csv.append(value).append('\n');
+    }
+    CsvTable table = read(csv.toString(), CsvTable.Type.DOUBLE);
+
+    Assert.assertEquals(values.size(), table.getRowCount());
+    double[] parsed = table.getDoubles(0);
+    for (int i = 0; i < values.size(); i++) {
+      // compare bits, so -0.0 and NaN are checked too
+      long expected = Double.doubleToLongBits(Double.parseDouble(values.get(i)));
+      Assert.assertEquals(values.get(i), expected, Double.doubleToLongBits(parsed[i]));
+    }
+  }
+
+  @Test
+  public void intsOutsideTheIntRangeAreSkipped() throws IOException {
+    CsvTable table = read("2147483647\n-2147483648\n2147483648\n-2147483649\n+7\n",
+        CsvTable.Type.INT);
+
+    Assert.assertEquals(3, table.getRowCount());
+    Assert.assertArrayEquals(new int[] {Integer.MAX_VALUE, Integer.MIN_VALUE, 7},
+        table.getInts(0));
+    Assert.assertEquals(2, table.getSkippedRows());
+    Assert.assertEquals(3, table.getFirstSkippedLine());
+  }
+
+  @Test
+  public void badRowsAreSkippedAndCounted() throws IOException {
+    CsvTable table = read("year,count\n1960, 12 \r\n\n1961\n1962,x\n 1963 ,\t40,extra\n",
+        CsvTable.Type.INT, CsvTable.Type.INT);
+
+    Assert.assertArrayEquals(new int[] {1960, 1963}, table.getInts(0));
+    Assert.assertArrayEquals(new int[] {12, 40}, table.getInts(1));
+    // the header, the row missing a column and the row with a word; blank lines don't count
+    Assert.assertEquals(3, table.getSkippedRows());
+    Assert.assertEquals(1, table.getFirstSkippedLine());
+  }
+
+  @Test
+  public void mappedFileParsedInChunksMatchesStream() throws IOException {
+    // several MB, so with more than one core the file is split into chunks parsed in parallel
+    Random random = new Random(7);
+    StringBuilder csv = new StringBuilder("lat,lng\n");
+    for (int i = 0; i < 300000; i++) {
+      csv.append(String.format(Locale.ROOT, "%.7f,%.7f%n",
+          random.nextDouble() * 180 - 90, random.nextDouble() * 360 - 180));
+    }
+    Path file = Files.createTempFile("csv-table-test-", ".csv");
+    try {
+      Files.write(file, csv.toString().getBytes(StandardCharsets.US_ASCII));
+      CsvTable mapped = CsvTable.map(file, CsvTable.Type.DOUBLE, CsvTable.Type.DOUBLE);
+      CsvTable streamed = read(csv.toString(), CsvTable.Type.DOUBLE, CsvTable.Type.DOUBLE);
+
+      Assert.assertEquals(300000, mapped.getRowCount());
+      Assert.assertEquals(1, mapped.getSkippedRows());
+      Assert.assertArrayEquals(streamed.getDoubles(0), mapped.getDoubles(0), 0);
+      Assert.assertArrayEquals(streamed.getDoubles(1), mapped.getDoubles(1), 0);
+    } finally {
+      Files.delete(file);
+    }
+  }
+
+  private static CsvTable read(String csv, CsvTable.Type... types) throws IOException {
+    return CsvTable.read(new ByteArrayInputStream(csv.getBytes(StandardCharsets.US_ASCII)), types);
+  }
+}
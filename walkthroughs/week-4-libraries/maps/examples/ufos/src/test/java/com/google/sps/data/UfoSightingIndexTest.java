@@ -0,0 +1,108 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.IntStream;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Checks the KD-tree against a linear scan, and that limited results are an even sample. */
+@RunWith(JUnit4.class)
+public final class UfoSightingIndexTest {
+
+  @Test
+  public void findsEverySightingInsideTheBoxUnderTheLimit() {
+    Random random = new Random(1);
+    // rounded, so many sightings share coordinates like the ones of a town do
+    double[] lats = new double[5000];
+    double[] lngs = new double[5000];
+    for (int i = 0; i < lats.length; i++) {
+      lats[i] = Math.round(random.nextDouble() * 180 - 90);
+      lngs[i] = Math.round(random.nextDouble() * 360 - 180);
+    }
+    UfoSightingIndex index = new UfoSightingIndex(lats, lngs);
+
+    for (int box = 0; box < 200; box++) {
+      double south = random.nextInt(181) - 90;
+      double north = south + random.nextInt(40);
+      double west = random.nextInt(361) - 180;
+      // some boxes cross the antimeridian
+      double east = west + random.nextInt(80);
+      if (east > 180) {
+        east -= 360;
+      }
+      Assert.assertArrayEquals(scan(index, south, west, north, east),
+          index.query(south, west, north, east, index.size()));
+    }
+    Assert.assertArrayEquals(IntStream.range(0, 5000).toArray(),
+        index.query(-90, -180, 90, 180, Integer.MAX_VALUE));
+  }
+
+  @Test
+  public void limitedResultsAreSpreadOverTheBox() {
+    // a 100 x 100 grid of sightings over the box from (0, 0) to (10, 10)
+    double[] lats = new double[10000];
+    double[] lngs = new double[10000];
+    for (int i = 0; i < lats.length; i++) {
+      lats[i] = (i / 100) / 10.0;
+      lngs[i] = (i % 100) / 10.0;
+    }
+    UfoSightingIndex index = new UfoSightingIndex(lats, lngs);
+
+    int[] sample = index.query(0, 0, 10, 10, 100);
+    Assert.assertEquals(100, sample.length);
+    Assert.assertEquals(100, Arrays.stream(sample).distinct().count());
+
+    // each quarter of the box gets about a quarter of the sample
+    int[] quarters = new int[4];
+    for (int sighting : sample) {
+      int quarter = (index.getLat(sighting) < 5 ? 0 : 2) + (index.getLng(sighting) < 5 ? 0 : 1);
+      quarters[quarter]++;
+    }
+    for (int count : quarters) {
+      Assert.assertTrue(Arrays.toString(quarters), count >= 15 && count <= 35);
+    }
+  }
+
+  @Test
+  public void emptyIndexAndZeroLimitFindNothing() {
+    UfoSightingIndex empty = new UfoSightingIndex(new double[0], new double[0]);
+    Assert.assertEquals(0, empty.query(-90, -180, 90, 180, 10).length);
+
+    UfoSightingIndex one = new UfoSightingIndex(new double[] {1}, new double[] {2});
+    Assert.assertEquals(0, one.query(-90, -180, 90, 180, 0).length);
+    Assert.assertArrayEquals(new int[] {0}, one.query(1, 2, 1, 2, 10));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void coordinatesMustPairUp() {
+    new UfoSightingIndex(new double[2], new double[1]);
+  }
+
+  /** @return the indexes of the sightings inside the box, found by checking every one */
+  private static int[] scan(UfoSightingIndex index, double south, double west, double north,
+      double east) {
+    boolean wraps = west > east;
+    return IntStream.range(0, index.size())
+        .filter(i -> index.getLat(i) >= south && index.getLat(i) <= north)
+        .filter(i -> wraps ? index.getLng(i) >= west || index.getLng(i) <= east
+            : index.getLng(i) >= west && index.getLng(i) <= east)
+        .toArray();
+  }
+}